@@ -0,0 +1,185 @@
+package com.github.nyrkovalex.seed.db;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Runs database calls on its own executor, every call borrows a connection from a
+ * {@link Db.ConnectionSource} for its duration.
+ * </p>
+ * <p>
+ * At most <code>concurrency</code> calls run at once and at most <code>queueSize</code> more may
+ * wait for their turn. A call submitted beyond that either blocks the caller until there is room
+ * or fails right away, depending on {@link Db.Backpressure}.
+ * </p>
+ * <p>
+ * Calls run on virtual threads when the JVM provides them and they are not disabled, on a fixed
+ * pool of daemon threads otherwise.
+ * </p>
+ */
+class AsyncDb implements Db.Async {
+
+	private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+	private final Db.ConnectionSource source;
+	private final Db.Backpressure backpressure;
+	private final ExecutorService executor;
+	private final Semaphore admitted;
+	private final Semaphore running;
+
+	AsyncDb(Db.ConnectionSource source, int concurrency, int queueSize, boolean virtualThreads,
+			Db.Backpressure backpressure) {
+		this.source = source;
+		this.backpressure = backpressure;
+		this.admitted = new Semaphore(concurrency + queueSize, true);
+		ExecutorService virtual = virtualThreads ? virtualThreadExecutor() : null;
+		if (virtual != null) {
+			this.executor = virtual;
+			this.running = new Semaphore(concurrency, true);
+		} else {
+			this.executor = platformThreadExecutor(concurrency);
+			this.running = null;
+		}
+	}
+
+	@Override
+	public CompletableFuture<Void> run(String sql, Object... params) {
+		return call(c -> {
+			c.run(sql, params);
+			return null;
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> one(String sql, Db.VoidCallback callback, Object... params) {
+		return call(c -> {
+			c.one(sql, callback, params);
+			return null;
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> query(String sql, Db.VoidCallback callback, Object... params) {
+		return call(c -> {
+			c.query(sql, callback, params);
+			return null;
+		});
+	}
+
+	@Override
+	public <T> CompletableFuture<List<T>> list(String sql, Db.RowReader<T> reader,
+			Object... params) {
+		return call(c -> c.list(sql, reader, params));
+	}
+
+	@Override
+	public CompletableFuture<Void> transaction(Db.TransactionCallback callback) {
+		return call(c -> {
+			c.transaction(callback);
+			return null;
+		});
+	}
+
+	@Override
+	public <T> CompletableFuture<T> call(Db.ConnectionCall<T> call) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		try {
+			admit();
+		} catch (RejectedExecutionException | SQLException ex) {
+			result.completeExceptionally(ex);
+			return result;
+		}
+		try {
+			executor.execute(() -> complete(result, call));
+		} catch (RejectedExecutionException ex) {
+			admitted.release();
+			result.completeExceptionally(ex);
+		}
+		return result;
+	}
+
+	@Override
+	public void close() {
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				// Keep waiting for running calls
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void admit() throws SQLException {
+		if (backpressure == Db.Backpressure.FAIL) {
+			if (!admitted.tryAcquire()) {
+				throw new RejectedExecutionException("Too many pending database calls");
+			}
+			return;
+		}
+		try {
+			admitted.acquire();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting to submit a database call", ex);
+		}
+	}
+
+	private <T> void complete(CompletableFuture<T> result, Db.ConnectionCall<T> call) {
+		try {
+			if (running != null) {
+				running.acquire();
+			}
+			try (Db.Connection connection = source.connection()) {
+				result.complete(call.call(connection));
+			} finally {
+				if (running != null) {
+					running.release();
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			result.completeExceptionally(ex);
+		} catch (Throwable ex) {
+			result.completeExceptionally(ex);
+		} finally {
+			admitted.release();
+		}
+	}
+
+	private static ExecutorService platformThreadExecutor(int threads) {
+		int poolNumber = POOL_COUNT.incrementAndGet();
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadFactory factory = r -> {
+			Thread thread = new Thread(r,
+					"seed-db-async-" + poolNumber + "-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		// Queue is effectively bounded by admission permits
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>(), factory);
+	}
+
+	private static ExecutorService virtualThreadExecutor() {
+		try {
+			Method factory = java.util.concurrent.Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException ex) {
+			// Running on a JVM without virtual threads
+			return null;
+		}
+	}
+}
@@ -0,0 +1,326 @@
+package com.github.nyrkovalex.seed.db;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Inserts rows on several worker threads, each borrowing connections from a
+ * {@link Db.ConnectionSource}. Producer rows are cut into chunks of <code>batchSize</code> and
+ * handed over through a bounded queue, so a producer outrunning the database blocks instead of
+ * piling rows up in memory.
+ * </p>
+ * <p>
+ * A worker takes whatever chunks are queued, up to <code>commitEvery</code> rows, and writes them
+ * in one transaction. A failed transaction is retried as a whole, then chunk by chunk to single
+ * out bad ones: those go to a dead letter sink, or stop the load when there is none.
+ * </p>
+ */
+class BulkLoader implements Db.BulkLoad {
+
+	private static final AtomicInteger LOAD_COUNT = new AtomicInteger();
+	private static final List<Object[]> END = new ArrayList<>(0);
+	private static final long POLL_MILLIS = 100;
+
+	private final String sql;
+	private final Db.ConnectionSource source;
+	private final int batchSize;
+	private final int commitEvery;
+	private final int retries;
+	private final Db.DeadLetter deadLetter;
+	private final BlockingQueue<List<Object[]>> queue;
+	private final List<Thread> workers;
+	private final AtomicReference<SQLException> failure = new AtomicReference<>();
+	private final LongAdder loaded = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder retried = new LongAdder();
+	private final long started = System.nanoTime();
+	private volatile long finished;
+	private volatile boolean aborted;
+	private List<Object[]> chunk;
+	private boolean ending;
+
+	BulkLoader(String sql, Db.ConnectionSource source, int workers, int batchSize,
+			int commitEvery, int queueSize, int retries, Db.DeadLetter deadLetter) {
+		this.sql = sql;
+		this.source = source;
+		this.batchSize = batchSize;
+		this.commitEvery = commitEvery;
+		this.retries = retries;
+		this.deadLetter = deadLetter;
+		this.queue = new ArrayBlockingQueue<>(Math.max(queueSize / batchSize, 1) + workers);
+		this.chunk = new ArrayList<>(batchSize);
+		int loadNumber = LOAD_COUNT.incrementAndGet();
+		List<Thread> threads = new ArrayList<>(workers);
+		for (int i = 1; i <= workers; i++) {
+			Thread thread = new Thread(this::work, "seed-db-load-" + loadNumber + "-" + i);
+			thread.setDaemon(true);
+			threads.add(thread);
+		}
+		this.workers = Collections.unmodifiableList(threads);
+		threads.forEach(Thread::start);
+	}
+
+	@Override
+	public synchronized Db.BulkLoad add(Object... row) throws SQLException {
+		if (ending) {
+			throw new IllegalStateException("Load is already finished");
+		}
+		chunk.add(row);
+		if (chunk.size() == batchSize) {
+			put(chunk);
+			chunk = new ArrayList<>(batchSize);
+		}
+		return this;
+	}
+
+	@Override
+	public Db.LoadStats stats() {
+		long end = finished;
+		return new Stats(loaded.sum(), failed.sum(), retried.sum(),
+				(end == 0 ? System.nanoTime() : end) - started);
+	}
+
+	@Override
+	public synchronized Db.LoadStats finish() throws SQLException {
+		if (!ending) {
+			ending = true;
+			try {
+				if (!chunk.isEmpty()) {
+					put(chunk);
+				}
+				for (int i = 0; i < workers.size(); i++) {
+					put(END);
+				}
+			} catch (SQLException ex) {
+				if (failure.get() == null) {
+					throw ex;
+				}
+				// Workers are stopping on their own, failure is reported below
+			}
+		}
+		join();
+		finished = System.nanoTime();
+		SQLException err = failure.get();
+		if (err != null) {
+			throw err;
+		}
+		return stats();
+	}
+
+	@Override
+	public synchronized void close() {
+		if (finished != 0) {
+			return;
+		}
+		ending = true;
+		aborted = true;
+		workers.forEach(Thread::interrupt);
+		queue.clear();
+		try {
+			join();
+		} catch (SQLException ex) {
+			// Interrupted, workers are daemons and are going down anyway
+		}
+		finished = System.nanoTime();
+	}
+
+	private void put(List<Object[]> rows) throws SQLException {
+		try {
+			while (!queue.offer(rows, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+				rethrowFailure();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while queueing rows", ex);
+		}
+		rethrowFailure();
+	}
+
+	private void rethrowFailure() throws SQLException {
+		SQLException err = failure.get();
+		if (err != null) {
+			throw new SQLException("Load stopped after a failure", err);
+		}
+	}
+
+	private void join() throws SQLException {
+		try {
+			for (Thread worker : workers) {
+				worker.join();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for load to finish", ex);
+		}
+	}
+
+	private void work() {
+		try {
+			List<List<Object[]>> group = new ArrayList<>();
+			while (!aborted && failure.get() == null) {
+				boolean last = gather(group);
+				if (!group.isEmpty()) {
+					write(group);
+					group.clear();
+				}
+				if (last) {
+					return;
+				}
+			}
+		} catch (InterruptedException ex) {
+			// Aborted
+		} catch (SQLException ex) {
+			failure.compareAndSet(null, ex);
+		} catch (RuntimeException ex) {
+			failure.compareAndSet(null, new SQLException(ex));
+		}
+	}
+
+	/**
+	 * Waits for a chunk and takes whatever else is already queued up to commit size
+	 *
+	 * @return true when end of input is reached
+	 */
+	private boolean gather(List<List<Object[]>> group) throws InterruptedException {
+		List<Object[]> next = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+		int rows = 0;
+		while (next != null) {
+			if (next == END) {
+				return true;
+			}
+			group.add(next);
+			rows += next.size();
+			if (rows >= commitEvery) {
+				return false;
+			}
+			next = queue.poll();
+		}
+		return false;
+	}
+
+	private void write(List<List<Object[]>> group) throws SQLException {
+		SQLException cause = attempt(group);
+		if (cause == null) {
+			return;
+		}
+		if (group.size() > 1) {
+			for (List<Object[]> rows : group) {
+				SQLException chunkCause = attempt(Collections.singletonList(rows));
+				if (chunkCause != null) {
+					reject(rows, chunkCause);
+				}
+			}
+			return;
+		}
+		reject(group.get(0), cause);
+	}
+
+	/**
+	 * @return last failure or null if rows made it to the database
+	 */
+	private SQLException attempt(List<List<Object[]>> group) {
+		SQLException cause = null;
+		for (int i = 0; i <= retries && !aborted; i++) {
+			if (i > 0) {
+				retried.increment();
+			}
+			try {
+				insert(group);
+				for (List<Object[]> rows : group) {
+					loaded.add(rows.size());
+				}
+				return null;
+			} catch (SQLException ex) {
+				cause = ex;
+			}
+		}
+		return cause;
+	}
+
+	private void insert(List<List<Object[]>> group) throws SQLException {
+		try (Db.Connection connection = source.connection()) {
+			connection.transaction(t -> {
+				try (Db.Batch batch = t.batch(sql, batchSize)) {
+					for (List<Object[]> rows : group) {
+						for (Object[] row : rows) {
+							batch.add(row);
+						}
+					}
+					batch.execute();
+				}
+				return true;
+			});
+		} catch (SQLException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new SQLException(ex);
+		}
+	}
+
+	private void reject(List<Object[]> rows, SQLException cause) throws SQLException {
+		if (deadLetter == null) {
+			throw cause;
+		}
+		failed.add(rows.size());
+		deadLetter.accept(Collections.unmodifiableList(rows), cause);
+	}
+
+	private static final class Stats implements Db.LoadStats {
+		private final long loaded;
+		private final long failed;
+		private final long retries;
+		private final long elapsedNanos;
+
+		Stats(long loaded, long failed, long retries, long elapsedNanos) {
+			this.loaded = loaded;
+			this.failed = failed;
+			this.retries = retries;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		@Override
+		public long loaded() {
+			return loaded;
+		}
+
+		@Override
+		public long failed() {
+			return failed;
+		}
+
+		@Override
+		public long retries() {
+			return retries;
+		}
+
+		@Override
+		public Duration elapsed() {
+			return Duration.ofNanos(elapsedNanos);
+		}
+
+		@Override
+		public double rowsPerSecond() {
+			if (elapsedNanos == 0) {
+				return 0;
+			}
+			return loaded * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("loaded=%d, failed=%d, retries=%d, elapsed=%dms, rate=%.0f rows/s",
+					loaded, failed, retries, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+					rowsPerSecond());
+		}
+	}
+}
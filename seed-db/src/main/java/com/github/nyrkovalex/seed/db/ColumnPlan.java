@@ -0,0 +1,80 @@
+package com.github.nyrkovalex.seed.db;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Column label to index mapping resolved once per result set shape
+ */
+class ColumnPlan {
+
+	private final String[] labels;
+	private final Map<String, Integer> indexes;
+
+	private ColumnPlan(ResultSetMetaData metaData) throws SQLException {
+		int columnCount = metaData.getColumnCount();
+		this.labels = new String[columnCount];
+		this.indexes = new HashMap<>(columnCount * 4);
+		// First column wins for duplicate labels, just like ResultSet.findColumn does
+		for (int i = columnCount; i >= 1; i--) {
+			String label = metaData.getColumnLabel(i);
+			labels[i - 1] = label;
+			indexes.put(label, i);
+			indexes.put(label.toLowerCase(Locale.ROOT), i);
+		}
+	}
+
+	int index(String label) throws SQLException {
+		Integer index = indexes.get(label);
+		if (index == null) {
+			index = indexes.get(label.toLowerCase(Locale.ROOT));
+		}
+		if (index == null) {
+			throw new SQLException("Column not found: " + label);
+		}
+		return index;
+	}
+
+	private boolean fits(ResultSetMetaData metaData) throws SQLException {
+		if (metaData.getColumnCount() != labels.length) {
+			return false;
+		}
+		for (int i = 0; i < labels.length; i++) {
+			if (!labels[i].equals(metaData.getColumnLabel(i + 1))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * LRU cache of plans keyed by SQL text. A cached plan is rebuilt if column labels of a result
+	 * set no longer match it, e.g. when a <code>select *</code> table gets altered.
+	 */
+	static class Cache {
+
+		private final Map<String, ColumnPlan> plans;
+
+		Cache(int maxSize) {
+			this.plans = new LinkedHashMap<String, ColumnPlan>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, ColumnPlan> eldest) {
+					return size() > maxSize;
+				}
+			};
+		}
+
+		ColumnPlan of(String sql, ResultSetMetaData metaData) throws SQLException {
+			ColumnPlan plan = plans.get(sql);
+			if (plan == null || !plan.fits(metaData)) {
+				plan = new ColumnPlan(metaData);
+				plans.put(sql, plan);
+			}
+			return plan;
+		}
+	}
+}
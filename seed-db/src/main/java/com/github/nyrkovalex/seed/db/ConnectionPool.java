@@ -0,0 +1,413 @@
+package com.github.nyrkovalex.seed.db;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * Bounded connection pool. Idle connections are reused most-recently-returned first so the
+ * oldest ones can be evicted once they stay idle longer than an idle timeout.
+ * </p>
+ * <p>
+ * Callers that cannot be served immediately are queued and served strictly in arrival order:
+ * a returned connection (or a freed slot) is handed off directly to the longest waiting caller.
+ * </p>
+ */
+class ConnectionPool implements Db.Pool {
+
+	private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+	private static final long MIN_EVICTION_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	@FunctionalInterface
+	interface Connector {
+		Db.DbConnection connect() throws SQLException;
+	}
+
+	private final Connector connector;
+	private final int minSize;
+	private final int maxSize;
+	private final long idleTimeoutNanos;
+	private final long borrowTimeoutNanos;
+	private final boolean validateOnBorrow;
+	private final ScheduledExecutorService evictor;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Deque<Entry> idle = new ArrayDeque<>();
+	private final Deque<Waiter> waiters = new ArrayDeque<>();
+	private int total;
+	private int active;
+	private boolean closed;
+
+	ConnectionPool(Connector connector, int minSize, int maxSize, Duration idleTimeout,
+			Duration borrowTimeout, boolean validateOnBorrow) throws SQLException {
+		this.connector = connector;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.idleTimeoutNanos = idleTimeout.toNanos();
+		this.borrowTimeoutNanos = borrowTimeout.toNanos();
+		this.validateOnBorrow = validateOnBorrow;
+		try {
+			fill();
+		} catch (SQLException ex) {
+			close();
+			throw ex;
+		}
+		this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "seed-db-pool-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = Math.max(idleTimeoutNanos / 2, MIN_EVICTION_PERIOD_NANOS);
+		evictor.scheduleWithFixedDelay(this::evict, period, period, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public Db.Connection connection() throws SQLException {
+		return new Lease(acquire());
+	}
+
+	@Override
+	public int active() {
+		lock.lock();
+		try {
+			return active;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int idle() {
+		lock.lock();
+		try {
+			return idle.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int waiting() {
+		lock.lock();
+		try {
+			return waiters.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void close() throws SQLException {
+		List<Entry> toClose;
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			toClose = new ArrayList<>(idle);
+			total -= idle.size();
+			idle.clear();
+			waiters.forEach(w -> w.condition.signal());
+		} finally {
+			lock.unlock();
+		}
+		if (evictor != null) {
+			evictor.shutdownNow();
+		}
+		SQLException err = null;
+		for (Entry entry : toClose) {
+			try {
+				entry.connection.close();
+			} catch (SQLException ex) {
+				if (err == null) {
+					err = ex;
+				} else {
+					err.addSuppressed(ex);
+				}
+			}
+		}
+		if (err != null) {
+			throw err;
+		}
+	}
+
+	private Entry acquire() throws SQLException {
+		long deadline = System.nanoTime() + borrowTimeoutNanos;
+		Entry entry;
+		lock.lock();
+		try {
+			ensureOpen();
+			if (waiters.isEmpty() && !idle.isEmpty()) {
+				entry = idle.pollFirst();
+			} else if (waiters.isEmpty() && total < maxSize) {
+				total++;
+				entry = null;
+			} else {
+				entry = await(deadline).entry;
+			}
+			active++;
+		} finally {
+			lock.unlock();
+		}
+		try {
+			return entry == null ? open() : validated(entry);
+		} catch (SQLException | RuntimeException ex) {
+			lock.lock();
+			try {
+				active--;
+				total--;
+				handOffSlot();
+			} finally {
+				lock.unlock();
+			}
+			throw ex;
+		}
+	}
+
+	private Waiter await(long deadline) throws SQLException {
+		Waiter waiter = new Waiter(lock.newCondition());
+		waiters.addLast(waiter);
+		try {
+			long nanos = deadline - System.nanoTime();
+			while (!waiter.granted) {
+				ensureOpen();
+				if (nanos <= 0L) {
+					throw new SQLTimeoutException(String.format(
+							"Timed out waiting for a connection, %d active, %d waiting", active,
+							waiters.size()));
+				}
+				nanos = waiter.condition.awaitNanos(nanos);
+			}
+			return waiter;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			if (waiter.granted) {
+				// Handed off just before the interrupt, pass it on rather than lose it
+				returnGranted(waiter.entry);
+			}
+			throw new SQLException("Interrupted while waiting for a connection", ex);
+		} finally {
+			if (!waiter.granted) {
+				waiters.remove(waiter);
+			}
+		}
+	}
+
+	/**
+	 * Gives back an entry or a slot granted to a caller that gave up. Must be called under lock.
+	 */
+	private void returnGranted(Entry entry) {
+		if (entry != null && !closed) {
+			offer(entry);
+			return;
+		}
+		total--;
+		handOffSlot();
+		if (entry != null) {
+			// Pool got closed meanwhile, nobody else is going to close this one
+			closeQuietly(entry);
+		}
+	}
+
+	private Entry validated(Entry entry) throws SQLException {
+		if (!validateOnBorrow || entry.connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+			return entry;
+		}
+		closeQuietly(entry);
+		return open();
+	}
+
+	private Entry open() throws SQLException {
+		return new Entry(connector.connect());
+	}
+
+	private void release(Entry entry) {
+		boolean broken = isBroken(entry);
+		lock.lock();
+		try {
+			active--;
+			if (!broken && !closed) {
+				offer(entry);
+				return;
+			}
+			total--;
+			handOffSlot();
+		} finally {
+			lock.unlock();
+		}
+		closeQuietly(entry);
+	}
+
+	/**
+	 * Hands an entry to the longest waiting caller or parks it as idle. Must be called under lock.
+	 */
+	private void offer(Entry entry) {
+		Waiter waiter = waiters.pollFirst();
+		if (waiter != null) {
+			waiter.grant(entry);
+			return;
+		}
+		entry.idleSince = System.nanoTime();
+		idle.addFirst(entry);
+	}
+
+	/**
+	 * Lets the longest waiting caller open a new connection in place of a discarded one. Must be
+	 * called under lock.
+	 */
+	private void handOffSlot() {
+		if (!waiters.isEmpty() && total < maxSize) {
+			total++;
+			waiters.pollFirst().grant(null);
+		}
+	}
+
+	private void fill() throws SQLException {
+		while (true) {
+			lock.lock();
+			try {
+				if (closed || total >= minSize) {
+					return;
+				}
+				total++;
+			} finally {
+				lock.unlock();
+			}
+			Entry entry;
+			try {
+				entry = open();
+			} catch (SQLException | RuntimeException ex) {
+				lock.lock();
+				try {
+					total--;
+					handOffSlot();
+				} finally {
+					lock.unlock();
+				}
+				throw ex;
+			}
+			lock.lock();
+			try {
+				if (!closed) {
+					offer(entry);
+					continue;
+				}
+				total--;
+			} finally {
+				lock.unlock();
+			}
+			closeQuietly(entry);
+		}
+	}
+
+	private void evict() {
+		List<Entry> expired = new ArrayList<>();
+		lock.lock();
+		try {
+			long now = System.nanoTime();
+			Iterator<Entry> oldestFirst = idle.descendingIterator();
+			while (oldestFirst.hasNext() && total > minSize) {
+				Entry entry = oldestFirst.next();
+				if (now - entry.idleSince < idleTimeoutNanos) {
+					break;
+				}
+				oldestFirst.remove();
+				total--;
+				expired.add(entry);
+			}
+		} finally {
+			lock.unlock();
+		}
+		expired.forEach(ConnectionPool::closeQuietly);
+		try {
+			fill();
+		} catch (SQLException | RuntimeException ex) {
+			// Database may be temporarily unavailable, next round will try again
+		}
+	}
+
+	private void ensureOpen() throws SQLException {
+		if (closed) {
+			throw new SQLException("Pool is closed");
+		}
+	}
+
+	private static boolean isBroken(Entry entry) {
+		try {
+			return entry.connection.isClosed();
+		} catch (SQLException ex) {
+			return true;
+		}
+	}
+
+	private static void closeQuietly(Entry entry) {
+		try {
+			entry.connection.close();
+		} catch (SQLException ex) {
+			// Nothing to do with a connection we are throwing away
+		}
+	}
+
+	private static final class Entry {
+		final Db.DbConnection connection;
+		long idleSince;
+
+		Entry(Db.DbConnection connection) {
+			this.connection = connection;
+		}
+	}
+
+	private static final class Waiter {
+		final Condition condition;
+		Entry entry;
+		boolean granted;
+
+		Waiter(Condition condition) {
+			this.condition = condition;
+		}
+
+		void grant(Entry entry) {
+			this.entry = entry;
+			this.granted = true;
+			condition.signal();
+		}
+	}
+
+	private final class Lease extends ForwardingConnection {
+
+		private final Entry entry;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		Lease(Entry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		protected Db.Connection delegate() throws SQLException {
+			if (released.get()) {
+				throw new SQLException("Connection has been returned to the pool");
+			}
+			return entry.connection;
+		}
+
+		@Override
+		public void close() {
+			if (released.compareAndSet(false, true)) {
+				release(entry);
+			}
+		}
+	}
+}
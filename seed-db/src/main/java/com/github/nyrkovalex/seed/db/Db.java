@@ -1,10 +1,21 @@
 package com.github.nyrkovalex.seed.db;
 
 import java.sql.Driver;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
 
 public class Db {
 
@@ -12,10 +23,139 @@ public class Db {
 		return new ConnectionBuilder(connectionString);
 	}
 
+	/**
+	 * Creates an asynchronous facade running calls on connections borrowed from a source, e.g. a
+	 * {@link Pool}
+	 *
+	 * @param source connections to run calls on
+	 * @return builder of an {@link Async} facade
+	 */
+	public static AsyncBuilder async(ConnectionSource source) {
+		return new AsyncBuilder(source, false);
+	}
+
+	/**
+	 * Creates an asynchronous facade over a single connection. Calls are run one at a time in
+	 * submission order, the connection is left open when the facade gets closed.
+	 *
+	 * @param connection connection to run calls on
+	 * @return builder of an {@link Async} facade
+	 */
+	public static AsyncBuilder async(Connection connection) {
+		Connection shared = new ForwardingConnection() {
+			@Override
+			protected Connection delegate() {
+				return connection;
+			}
+
+			@Override
+			public void close() {
+				// Owned by the caller
+			}
+		};
+		return new AsyncBuilder(() -> shared, true);
+	}
+
+	/**
+	 * Creates a pipeline inserting rows with given statement on several connections at once
+	 *
+	 * @param source connections to insert rows on, e.g. a {@link Pool}
+	 * @param sql insert statement with a placeholder for every column of a row
+	 * @return builder of a {@link BulkLoad}
+	 */
+	public static BulkLoadBuilder bulkLoad(ConnectionSource source, String sql) {
+		return new BulkLoadBuilder(source, sql);
+	}
+
+	public static MetricsBuilder metrics() {
+		return new MetricsBuilder();
+	}
+
+	public static QueryCacheBuilder queryCache() {
+		return new QueryCacheBuilder();
+	}
+
 	public interface Runner {
 		void run(String sql) throws SQLException;
 		void one(String sql, VoidCallback callback) throws SQLException;
 		void query(String sql, VoidCallback callback) throws SQLException;
+		void run(String sql, Object... params) throws SQLException;
+		void one(String sql, VoidCallback callback, Object... params) throws SQLException;
+		void query(String sql, VoidCallback callback, Object... params) throws SQLException;
+		Batch batch(String sql, int batchSize) throws SQLException;
+
+		/**
+		 * <p>
+		 * Runs a query returning a lazily mapped stream of rows read through a forward-only,
+		 * read-only cursor. Rows are fetched from the database in chunks of a fetch size
+		 * configured by {@link ConnectionBuilder#fetchSize(int)}.
+		 * </p>
+		 * <p>
+		 * Returned stream holds an open statement and must be closed, use it in a
+		 * try-with-resources block. Some drivers (PostgreSQL for one) only honor fetch size
+		 * inside a transaction.
+		 * </p>
+		 */
+		<T> Stream<T> stream(String sql, RowMapper<T> mapper, Object... params) throws SQLException;
+		<T> Stream<T> stream(String sql, int fetchSize, RowMapper<T> mapper, Object... params)
+				throws SQLException;
+
+		/**
+		 * Runs a query reading every row with a {@link RowReader}. Column labels are resolved to
+		 * indexes once per SQL and shared by all rows.
+		 */
+		<T> List<T> list(String sql, RowReader<T> reader, Object... params) throws SQLException;
+
+		/**
+		 * Feeds a single column of every row to a primitive consumer, no boxing or per-row
+		 * allocation involved. Same goes for {@link #eachLong} and {@link #eachDouble}.
+		 */
+		void eachInt(String sql, String column, IntConsumer consumer, Object... params)
+				throws SQLException;
+		void eachLong(String sql, String column, LongConsumer consumer, Object... params)
+				throws SQLException;
+		void eachDouble(String sql, String column, DoubleConsumer consumer, Object... params)
+				throws SQLException;
+	}
+
+	/**
+	 * Current row of a result set with column labels resolved to indexes ahead of time
+	 */
+	public interface Row {
+		int index(String column) throws SQLException;
+		int getInt(String column) throws SQLException;
+		long getLong(String column) throws SQLException;
+		double getDouble(String column) throws SQLException;
+		boolean getBoolean(String column) throws SQLException;
+		String getString(String column) throws SQLException;
+		Object getObject(String column) throws SQLException;
+		boolean wasNull() throws SQLException;
+		ResultSet resultSet();
+	}
+
+	/**
+	 * Parameter sets collected for a single statement and sent to the database
+	 * <code>batchSize</code> rows at a time
+	 */
+	public interface Batch extends AutoCloseable {
+
+		Batch add(Object... params) throws SQLException;
+
+		/**
+		 * Sends rows not flushed yet to the database
+		 *
+		 * @return update counts for every row added, in the order rows were added
+		 * @throws SQLException if any of the batches fails
+		 */
+		int[] execute() throws SQLException;
+
+		/**
+		 * Releases the underlying statement, rows not flushed yet are discarded
+		 *
+		 * @throws SQLException if statement cannot be released
+		 */
+		@Override
+		void close() throws SQLException;
 	}
 
 	public interface Connection extends Runner, AutoCloseable {
@@ -25,14 +165,583 @@ public class Db {
 	public static class ConnectionBuilder {
 
 		private final String connectionString;
+		private int statementCacheSize = 64;
+		private int fetchSize = 500;
+		private Instrumentation instrumentation = Instrumentation.NOOP;
 
 		public ConnectionBuilder(String connectionString) {
 			this.connectionString = connectionString;
 		}
 
+		/**
+		 * Sets how many prepared statements each connection keeps open for reuse, least recently
+		 * used ones are closed first. Zero disables caching.
+		 *
+		 * @param statementCacheSize max number of cached statements per connection
+		 * @return this builder
+		 */
+		public ConnectionBuilder statementCacheSize(int statementCacheSize) {
+			if (statementCacheSize < 0) {
+				throw new IllegalArgumentException("Statement cache size must not be negative");
+			}
+			this.statementCacheSize = statementCacheSize;
+			return this;
+		}
+
 		public Connection with(Driver driver) throws SQLException {
+			return connect(driver);
+		}
+
+		/**
+		 * Sets how many rows streaming queries fetch from the database in one round trip
+		 *
+		 * @param fetchSize fetch size hint passed to the driver, zero leaves driver default
+		 * @return this builder
+		 */
+		public ConnectionBuilder fetchSize(int fetchSize) {
+			if (fetchSize < 0) {
+				throw new IllegalArgumentException("Fetch size must not be negative");
+			}
+			this.fetchSize = fetchSize;
+			return this;
+		}
+
+		/**
+		 * Reports statements and transactions of connections built to given metrics. Same
+		 * metrics may be shared by any number of connections and pools.
+		 *
+		 * @param metrics metrics to report to
+		 * @return this builder
+		 */
+		public ConnectionBuilder instrumentedBy(Metrics metrics) {
+			if (!(metrics instanceof Instrumentation)) {
+				throw new IllegalArgumentException("Metrics must be created by Db.metrics()");
+			}
+			this.instrumentation = (Instrumentation) metrics;
+			return this;
+		}
+
+		public PoolBuilder pooled() {
+			return new PoolBuilder(this);
+		}
+
+		/**
+		 * Makes connection string given to {@link Db#connectTo(String)} a primary database and
+		 * spreads reads among given replicas
+		 *
+		 * @param connectionStrings replica connection strings
+		 * @return routing builder sharing settings of this builder
+		 */
+		public RoutingBuilder withReplicas(String... connectionStrings) {
+			return new RoutingBuilder(this, Arrays.asList(connectionStrings));
+		}
+
+		DbConnection connect(Driver driver) throws SQLException {
+			return connect(driver, connectionString);
+		}
+
+		DbConnection connect(Driver driver, String connectionString) throws SQLException {
 			java.sql.Connection connection = driver.connect(connectionString, null);
-			return new DbConnection(connection);
+			return new DbConnection(connection, statementCacheSize, fetchSize,
+					instrumentation);
+		}
+	}
+
+	@FunctionalInterface
+	public interface ConnectionSource {
+		Connection connection() throws SQLException;
+	}
+
+	@FunctionalInterface
+	public interface ConnectionCall<T> {
+		T call(Connection connection) throws SQLException;
+	}
+
+	public interface Async extends AutoCloseable {
+		CompletableFuture<Void> run(String sql, Object... params);
+		CompletableFuture<Void> one(String sql, VoidCallback callback, Object... params);
+		CompletableFuture<Void> query(String sql, VoidCallback callback, Object... params);
+		<T> CompletableFuture<List<T>> list(String sql, RowReader<T> reader, Object... params);
+		CompletableFuture<Void> transaction(TransactionCallback callback);
+		<T> CompletableFuture<T> call(ConnectionCall<T> call);
+
+		/**
+		 * Stops accepting calls and waits for submitted ones to finish
+		 */
+		@Override
+		void close();
+	}
+
+	/**
+	 * What to do with a call submitted while all running and queue slots are taken
+	 */
+	public enum Backpressure {
+		/**
+		 * Block submitting thread until a slot frees up
+		 */
+		BLOCK,
+		/**
+		 * Fail returned future with {@link java.util.concurrent.RejectedExecutionException}
+		 */
+		FAIL
+	}
+
+	public static class AsyncBuilder {
+
+		private final ConnectionSource source;
+		private final boolean serial;
+		private int concurrency = Runtime.getRuntime().availableProcessors();
+		private int queueSize = 1000;
+		private boolean virtualThreads = true;
+		private Backpressure backpressure = Backpressure.BLOCK;
+
+		AsyncBuilder(ConnectionSource source, boolean serial) {
+			this.source = source;
+			this.serial = serial;
+		}
+
+		/**
+		 * Sets how many calls may run at once. Ignored for a facade over a single connection.
+		 *
+		 * @param concurrency max number of calls running at once
+		 * @return this builder
+		 */
+		public AsyncBuilder concurrency(int concurrency) {
+			if (concurrency < 1) {
+				throw new IllegalArgumentException("Concurrency must be positive");
+			}
+			this.concurrency = concurrency;
+			return this;
+		}
+
+		public AsyncBuilder queueSize(int queueSize) {
+			if (queueSize < 0) {
+				throw new IllegalArgumentException("Queue size must not be negative");
+			}
+			this.queueSize = queueSize;
+			return this;
+		}
+
+		public AsyncBuilder virtualThreads(boolean virtualThreads) {
+			this.virtualThreads = virtualThreads;
+			return this;
+		}
+
+		public AsyncBuilder whenFull(Backpressure backpressure) {
+			this.backpressure = Objects.requireNonNull(backpressure);
+			return this;
+		}
+
+		public Async build() {
+			// Virtual threads may start out of order, single connection is served by one thread
+			return new AsyncDb(source, serial ? 1 : concurrency, queueSize,
+					virtualThreads && !serial, backpressure);
+		}
+	}
+
+	/**
+	 * Rows fed to a running load. Not meant to be fed from several threads at once.
+	 */
+	public interface BulkLoad extends AutoCloseable {
+		/**
+		 * Queues a row for insertion, blocks while the queue is full
+		 *
+		 * @param row statement parameters
+		 * @return this load
+		 * @throws SQLException if load has stopped after a failure
+		 */
+		BulkLoad add(Object... row) throws SQLException;
+
+		/**
+		 * @return progress so far
+		 */
+		LoadStats stats();
+
+		/**
+		 * Sends remaining rows and waits for workers to write everything queued and finish
+		 *
+		 * @return final load stats
+		 * @throws SQLException if load has stopped after a failure
+		 */
+		LoadStats finish() throws SQLException;
+
+		/**
+		 * Stops workers without waiting for queued rows, does nothing after {@link #finish()}
+		 */
+		@Override
+		void close();
+	}
+
+	public interface LoadStats {
+		long loaded();
+		long failed();
+		long retries();
+		Duration elapsed();
+		double rowsPerSecond();
+	}
+
+	/**
+	 * Receives rows that could not be inserted after all retries
+	 */
+	@FunctionalInterface
+	public interface DeadLetter {
+		void accept(List<Object[]> rows, SQLException cause) throws SQLException;
+	}
+
+	public static class BulkLoadBuilder {
+
+		private final ConnectionSource source;
+		private final String sql;
+		private int workers = Runtime.getRuntime().availableProcessors();
+		private int batchSize = 1000;
+		private int commitEvery = 10_000;
+		private int queueSize = 10_000;
+		private int retries = 2;
+		private DeadLetter deadLetter;
+
+		BulkLoadBuilder(ConnectionSource source, String sql) {
+			this.source = Objects.requireNonNull(source);
+			this.sql = Objects.requireNonNull(sql);
+		}
+
+		/**
+		 * @param workers number of threads inserting rows, each holds a connection while writing
+		 * @return this builder
+		 */
+		public BulkLoadBuilder workers(int workers) {
+			if (workers < 1) {
+				throw new IllegalArgumentException("Number of workers must be positive");
+			}
+			this.workers = workers;
+			return this;
+		}
+
+		public BulkLoadBuilder batchSize(int batchSize) {
+			if (batchSize < 1) {
+				throw new IllegalArgumentException("Batch size must be positive");
+			}
+			this.batchSize = batchSize;
+			return this;
+		}
+
+		/**
+		 * @param commitEvery max number of rows a worker writes in one transaction
+		 * @return this builder
+		 */
+		public BulkLoadBuilder commitEvery(int commitEvery) {
+			if (commitEvery < 1) {
+				throw new IllegalArgumentException("Commit size must be positive");
+			}
+			this.commitEvery = commitEvery;
+			return this;
+		}
+
+		/**
+		 * @param queueSize approximate number of rows waiting for a worker before producer blocks
+		 * @return this builder
+		 */
+		public BulkLoadBuilder queueSize(int queueSize) {
+			if (queueSize < 0) {
+				throw new IllegalArgumentException("Queue size must not be negative");
+			}
+			this.queueSize = queueSize;
+			return this;
+		}
+
+		public BulkLoadBuilder retries(int retries) {
+			if (retries < 0) {
+				throw new IllegalArgumentException("Number of retries must not be negative");
+			}
+			this.retries = retries;
+			return this;
+		}
+
+		/**
+		 * Sends rows failing after all retries to given sink and goes on loading. Without one
+		 * such rows stop the load.
+		 *
+		 * @param deadLetter sink for failed rows
+		 * @return this builder
+		 */
+		public BulkLoadBuilder deadLetter(DeadLetter deadLetter) {
+			this.deadLetter = Objects.requireNonNull(deadLetter);
+			return this;
+		}
+
+		public BulkLoad start() {
+			return new BulkLoader(sql, source, workers, batchSize, commitEvery, queueSize,
+					retries, deadLetter);
+		}
+	}
+
+	/**
+	 * Bounded set of physical connections. Connections obtained from a pool are returned back to it
+	 * on {@link Connection#close()}.
+	 */
+	public interface Pool extends ConnectionSource, AutoCloseable {
+		@Override
+		Connection connection() throws SQLException;
+		int active();
+		int idle();
+		int waiting();
+
+		@Override
+		void close() throws SQLException;
+	}
+
+	/**
+	 * Read-through cache of <code>one</code> and <code>query</code> results shared by all
+	 * connections it wraps. Writes made through wrapped connections invalidate cached results of
+	 * tables they touch, writes made elsewhere must be reported with {@link #invalidate(String)}.
+	 */
+	public interface QueryCache {
+		Connection wrap(Connection connection);
+		void invalidate(String table);
+		void invalidateAll();
+		CacheStats stats();
+	}
+
+	public interface CacheStats {
+		long hits();
+		long misses();
+		long evictions();
+		int size();
+	}
+
+	/**
+	 * Statement latencies, row counts and transaction outcomes of instrumented connections, see
+	 * {@link ConnectionBuilder#instrumentedBy(Metrics)}
+	 */
+	public interface Metrics {
+		MetricsSnapshot snapshot();
+	}
+
+	public interface MetricsSnapshot {
+		/**
+		 * @return statement stats keyed by SQL with literals replaced by <code>?</code>
+		 */
+		Map<String, StatementStats> statements();
+		long commits();
+		long rollbacks();
+		double commitRatio();
+	}
+
+	public interface StatementStats {
+		long count();
+		long errors();
+		long totalNanos();
+		long maxNanos();
+		long percentileNanos(double percentile);
+
+		/**
+		 * @return statement counts where element <code>i</code> counts statements that took less
+		 * than <code>2^i</code> microseconds
+		 */
+		long[] histogram();
+
+		/**
+		 * @return rows read, results handed to {@link VoidCallback}s as is are not counted
+		 */
+		long rows();
+		long updates();
+	}
+
+	public static class MetricsBuilder {
+
+		private Duration slowQueryThreshold = Duration.ofSeconds(1);
+
+		MetricsBuilder() {
+		}
+
+		/**
+		 * Statements running longer than a threshold are logged as warnings
+		 *
+		 * @param slowQueryThreshold slow statement threshold
+		 * @return this builder
+		 */
+		public MetricsBuilder slowQueryThreshold(Duration slowQueryThreshold) {
+			this.slowQueryThreshold = Objects.requireNonNull(slowQueryThreshold);
+			return this;
+		}
+
+		public Metrics build() {
+			return new StatementMetrics(slowQueryThreshold.toNanos());
+		}
+	}
+
+	public static class QueryCacheBuilder {
+
+		private int maxSize = 1000;
+		private Duration ttl = Duration.ofMinutes(5);
+
+		QueryCacheBuilder() {
+		}
+
+		public QueryCacheBuilder maxSize(int maxSize) {
+			if (maxSize < 1) {
+				throw new IllegalArgumentException("Cache max size must be positive");
+			}
+			this.maxSize = maxSize;
+			return this;
+		}
+
+		public QueryCacheBuilder ttl(Duration ttl) {
+			this.ttl = Objects.requireNonNull(ttl);
+			return this;
+		}
+
+		public QueryCache build() {
+			return new ResultCache(maxSize, ttl.toNanos());
+		}
+	}
+
+	/**
+	 * How reads pick a replica
+	 */
+	public enum Balancing {
+		/**
+		 * Take replicas in turn
+		 */
+		ROUND_ROBIN,
+		/**
+		 * Take replica with fewest reads in progress, in turn among equally busy ones
+		 */
+		LEAST_OUTSTANDING
+	}
+
+	/**
+	 * Builds a connection sending <code>run</code>, batches and transactions to a primary
+	 * database and queries to replicas. Each database gets its own pool so resulting connection
+	 * may be shared between threads.
+	 */
+	public static class RoutingBuilder {
+
+		private final ConnectionBuilder connectionBuilder;
+		private final List<String> replicas;
+		private Balancing balancing = Balancing.ROUND_ROBIN;
+		private int poolSize = 10;
+		private Duration ejectFor = Duration.ofSeconds(30);
+		private Duration borrowTimeout = Duration.ofMillis(500);
+
+		RoutingBuilder(ConnectionBuilder connectionBuilder, List<String> replicas) {
+			if (replicas.isEmpty()) {
+				throw new IllegalArgumentException("At least one replica is required");
+			}
+			this.connectionBuilder = connectionBuilder;
+			this.replicas = replicas;
+		}
+
+		public RoutingBuilder balancing(Balancing balancing) {
+			this.balancing = Objects.requireNonNull(balancing);
+			return this;
+		}
+
+		/**
+		 * @param poolSize max number of connections to each database
+		 * @return this builder
+		 */
+		public RoutingBuilder poolSize(int poolSize) {
+			if (poolSize < 1) {
+				throw new IllegalArgumentException("Pool size must be positive");
+			}
+			this.poolSize = poolSize;
+			return this;
+		}
+
+		/**
+		 * @param ejectFor how long a failing replica gets no reads
+		 * @return this builder
+		 */
+		public RoutingBuilder ejectFor(Duration ejectFor) {
+			this.ejectFor = Objects.requireNonNull(ejectFor);
+			return this;
+		}
+
+		/**
+		 * @param borrowTimeout how long a read waits for a connection of a busy replica before
+		 * going to another database, primary ones are waited for as long as a pool waits by default
+		 * @return this builder
+		 */
+		public RoutingBuilder borrowTimeout(Duration borrowTimeout) {
+			this.borrowTimeout = Objects.requireNonNull(borrowTimeout);
+			return this;
+		}
+
+		/**
+		 * Connects to primary right away, replicas are connected to on first read so one being
+		 * down does not stop the application from starting
+		 *
+		 * @param driver driver for all databases
+		 * @return routing connection
+		 * @throws SQLException if primary cannot be connected to
+		 */
+		public Connection with(Driver driver) throws SQLException {
+			Pool primary = pool(driver, connectionBuilder.connectionString, 1,
+					Duration.ofSeconds(30));
+			List<Pool> pools = new ArrayList<>(replicas.size());
+			for (String replica : replicas) {
+				pools.add(pool(driver, replica, 0, borrowTimeout));
+			}
+			return new RoutingConnection(primary, pools, balancing, ejectFor.toNanos());
+		}
+
+		private Pool pool(Driver driver, String connectionString, int minSize,
+				Duration borrowTimeout) throws SQLException {
+			return new ConnectionPool(() -> connectionBuilder.connect(driver, connectionString),
+					minSize, poolSize, Duration.ofMinutes(10), borrowTimeout, true);
+		}
+	}
+
+	public static class PoolBuilder {
+
+		private final ConnectionBuilder connectionBuilder;
+		private int minSize = 0;
+		private int maxSize = 10;
+		private Duration idleTimeout = Duration.ofMinutes(10);
+		private Duration borrowTimeout = Duration.ofSeconds(30);
+		private boolean validateOnBorrow = true;
+
+		PoolBuilder(ConnectionBuilder connectionBuilder) {
+			this.connectionBuilder = connectionBuilder;
+		}
+
+		public PoolBuilder minSize(int minSize) {
+			if (minSize < 0) {
+				throw new IllegalArgumentException("Pool min size must not be negative");
+			}
+			this.minSize = minSize;
+			return this;
+		}
+
+		public PoolBuilder maxSize(int maxSize) {
+			if (maxSize < 1) {
+				throw new IllegalArgumentException("Pool max size must be positive");
+			}
+			this.maxSize = maxSize;
+			return this;
+		}
+
+		public PoolBuilder idleTimeout(Duration idleTimeout) {
+			this.idleTimeout = Objects.requireNonNull(idleTimeout);
+			return this;
+		}
+
+		public PoolBuilder borrowTimeout(Duration borrowTimeout) {
+			this.borrowTimeout = Objects.requireNonNull(borrowTimeout);
+			return this;
+		}
+
+		public PoolBuilder validateOnBorrow(boolean validateOnBorrow) {
+			this.validateOnBorrow = validateOnBorrow;
+			return this;
+		}
+
+		public Pool with(Driver driver) throws SQLException {
+			if (minSize > maxSize) {
+				throw new IllegalArgumentException("Pool min size must not exceed max size");
+			}
+			return new ConnectionPool(() -> connectionBuilder.connect(driver), minSize, maxSize,
+					idleTimeout, borrowTimeout, validateOnBorrow);
 		}
 	}
 
@@ -41,34 +750,58 @@ public class Db {
 		void call(ResultSet rs) throws SQLException;
 	}
 
+	@FunctionalInterface
+	public interface RowMapper<T> {
+		T map(ResultSet rs) throws SQLException;
+	}
+
+	@FunctionalInterface
+	public interface RowReader<T> {
+		T read(Row row) throws SQLException;
+	}
+
 	@FunctionalInterface
 	public interface TransactionCallback {
 		boolean call(Runner runner) throws SQLException;
 	}
 
-	private static class DbConnection implements Db.Connection {
+	static class DbConnection implements Db.Connection {
 
 		private final java.sql.Connection connection;
+		private final StatementCache statements;
+		private final ColumnPlan.Cache plans;
+		private final int fetchSize;
+		private final Instrumentation instrumentation;
 
-		DbConnection(java.sql.Connection connection) {
+		DbConnection(java.sql.Connection connection, int statementCacheSize, int fetchSize,
+				Instrumentation instrumentation) {
 			Objects.requireNonNull(connection,
 					"Connection must not be null, check your connection string");
 			this.connection = connection;
+			this.statements = new StatementCache(connection, statementCacheSize);
+			this.plans = new ColumnPlan.Cache(statementCacheSize);
+			this.fetchSize = fetchSize;
+			this.instrumentation = instrumentation;
 		}
 
 		@Override
 		public void run(String sql) throws SQLException {
-			try (final Statement statement = connection.createStatement()) {
-				statement.execute(sql);
-			}
+			observed(sql, () -> {
+				try (final Statement statement = connection.createStatement()) {
+					return statement.execute(sql) ? Tally.results() : Tally.updated(statement);
+				}
+			});
 		}
 
 		@Override
 		public void query(String sql, Db.VoidCallback callback) throws SQLException {
-			try (final Statement statement = connection.createStatement();
-			     final ResultSet resultSet = statement.executeQuery(sql)) {
-				callback.call(resultSet);
-			}
+			observed(sql, () -> {
+				try (final Statement statement = connection.createStatement();
+				     final ResultSet resultSet = statement.executeQuery(sql)) {
+					callback.call(resultSet);
+					return Tally.results();
+				}
+			});
 		}
 
 		@Override
@@ -77,11 +810,14 @@ public class Db {
 				connection.setAutoCommit(false);
 				if (callback.call(this)) {
 					connection.commit();
+					instrumentation.transaction(true);
 				} else {
 					connection.rollback();
+					instrumentation.transaction(false);
 				}
 			} catch (SQLException | RuntimeException ex) {
 				connection.rollback();
+				instrumentation.transaction(false);
 				throw new SQLException(ex);
 			} finally {
 				connection.setAutoCommit(true);
@@ -90,19 +826,255 @@ public class Db {
 
 		@Override
 		public void one(String sql, Db.VoidCallback callback) throws SQLException {
-			try (final Statement statement = connection.createStatement()) {
-				ResultSet rs = statement.executeQuery(sql);
-				if (rs.next()) {
-					callback.call(rs);
-					return;
+			observed(sql, () -> {
+				try (final Statement statement = connection.createStatement()) {
+					ResultSet rs = statement.executeQuery(sql);
+					if (rs.next()) {
+						callback.call(rs);
+						return Tally.rows(1);
+					}
+					throw new SQLException("Query returned no results");
+				}
+			});
+		}
+
+		@Override
+		public void run(String sql, Object... params) throws SQLException {
+			prepared(sql, params, statement -> statement.execute()
+					? Tally.results()
+					: Tally.updated(statement));
+		}
+
+		@Override
+		public void one(String sql, Db.VoidCallback callback, Object... params)
+				throws SQLException {
+			prepared(sql, params, statement -> {
+				try (final ResultSet rs = statement.executeQuery()) {
+					if (rs.next()) {
+						callback.call(rs);
+						return Tally.rows(1);
+					}
+					throw new SQLException("Query returned no results");
+				}
+			});
+		}
+
+		@Override
+		public void query(String sql, Db.VoidCallback callback, Object... params)
+				throws SQLException {
+			prepared(sql, params, statement -> {
+				try (final ResultSet resultSet = statement.executeQuery()) {
+					callback.call(resultSet);
+					return Tally.results();
+				}
+			});
+		}
+
+		@Override
+		public Db.Batch batch(String sql, int batchSize) throws SQLException {
+			return new StatementBatch(sql, batchSize, statements, instrumentation);
+		}
+
+		@Override
+		public <T> Stream<T> stream(String sql, Db.RowMapper<T> mapper, Object... params)
+				throws SQLException {
+			return stream(sql, fetchSize, mapper, params);
+		}
+
+		@Override
+		public <T> Stream<T> stream(String sql, int fetchSize, Db.RowMapper<T> mapper,
+				Object... params) throws SQLException {
+			long started = System.nanoTime();
+			PreparedStatement statement = connection.prepareStatement(sql,
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			try {
+				statement.setFetchSize(fetchSize);
+				bind(statement, params);
+				ResultSet resultSet = statement.executeQuery();
+				return new ResultSetSpliterator<>(statement, resultSet, mapper,
+						(rows, failed) -> instrumentation.statement(sql,
+								System.nanoTime() - started, rows, Instrumentation.UNKNOWN,
+								failed)).stream();
+			} catch (SQLException | RuntimeException ex) {
+				statements.discard(statement, ex);
+				instrumentation.statement(sql, System.nanoTime() - started, 0,
+						Instrumentation.UNKNOWN, true);
+				throw ex;
+			}
+		}
+
+		@Override
+		public <T> List<T> list(String sql, Db.RowReader<T> reader, Object... params)
+				throws SQLException {
+			List<T> rows = new ArrayList<>();
+			prepared(sql, params, statement -> {
+				try (final ResultSet rs = statement.executeQuery()) {
+					Db.Row row = new PlannedRow(rs, plans.of(sql, rs.getMetaData()));
+					while (rs.next()) {
+						rows.add(reader.read(row));
+					}
+					return Tally.rows(rows.size());
 				}
-				throw new SQLException("Query returned no results");
+			});
+			return rows;
+		}
+
+		@Override
+		public void eachInt(String sql, String column, IntConsumer consumer, Object... params)
+				throws SQLException {
+			prepared(sql, params, statement -> {
+				try (final ResultSet rs = statement.executeQuery()) {
+					int index = plans.of(sql, rs.getMetaData()).index(column);
+					long rows = 0;
+					while (rs.next()) {
+						consumer.accept(rs.getInt(index));
+						rows++;
+					}
+					return Tally.rows(rows);
+				}
+			});
+		}
+
+		@Override
+		public void eachLong(String sql, String column, LongConsumer consumer, Object... params)
+				throws SQLException {
+			prepared(sql, params, statement -> {
+				try (final ResultSet rs = statement.executeQuery()) {
+					int index = plans.of(sql, rs.getMetaData()).index(column);
+					long rows = 0;
+					while (rs.next()) {
+						consumer.accept(rs.getLong(index));
+						rows++;
+					}
+					return Tally.rows(rows);
+				}
+			});
+		}
+
+		@Override
+		public void eachDouble(String sql, String column, DoubleConsumer consumer,
+				Object... params) throws SQLException {
+			prepared(sql, params, statement -> {
+				try (final ResultSet rs = statement.executeQuery()) {
+					int index = plans.of(sql, rs.getMetaData()).index(column);
+					long rows = 0;
+					while (rs.next()) {
+						consumer.accept(rs.getDouble(index));
+						rows++;
+					}
+					return Tally.rows(rows);
+				}
+			});
+		}
+
+		private void prepared(String sql, Object[] params, StatementCall call)
+				throws SQLException {
+			observed(sql, () -> {
+				PreparedStatement statement = statements.acquire(sql);
+				Tally tally;
+				try {
+					bind(statement, params);
+					tally = call.call(statement);
+				} catch (SQLException | RuntimeException ex) {
+					statements.discard(statement, ex);
+					throw ex;
+				}
+				statements.release(sql, statement);
+				return tally;
+			});
+		}
+
+		private void observed(String sql, Observed call) throws SQLException {
+			long started = System.nanoTime();
+			Tally tally;
+			try {
+				tally = call.call();
+			} catch (SQLException | RuntimeException ex) {
+				instrumentation.statement(sql, System.nanoTime() - started, 0,
+						Instrumentation.UNKNOWN, true);
+				throw ex;
 			}
+			instrumentation.statement(sql, System.nanoTime() - started, tally.rows,
+					tally.updates, false);
+		}
+
+		private static void bind(PreparedStatement statement, Object[] params)
+				throws SQLException {
+			for (int i = 0; i < params.length; i++) {
+				statement.setObject(i + 1, params[i]);
+			}
+		}
+
+		boolean isValid(int timeoutSeconds) throws SQLException {
+			return connection.isValid(timeoutSeconds);
+		}
+
+		boolean isClosed() throws SQLException {
+			return connection.isClosed();
+		}
+
+		@Override
+		public void close() throws SQLException {
+			try {
+				statements.close();
+			} finally {
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * Rows read and updated by a single statement
+	 */
+	static final class Tally {
+
+		private static final Tally RESULTS =
+				new Tally(Instrumentation.UNKNOWN, Instrumentation.UNKNOWN);
+
+		final long rows;
+		final long updates;
+
+		private Tally(long rows, long updates) {
+			this.rows = rows;
+			this.updates = updates;
+		}
+
+		static Tally results() {
+			return RESULTS;
+		}
+
+		static Tally rows(long rows) {
+			return new Tally(rows, Instrumentation.UNKNOWN);
+		}
+
+		static Tally updated(Statement statement) throws SQLException {
+			return new Tally(Instrumentation.UNKNOWN, statement.getUpdateCount());
+		}
+	}
+
+	@FunctionalInterface
+	interface StatementCall {
+		Tally call(PreparedStatement statement) throws SQLException;
+	}
+
+	@FunctionalInterface
+	interface Observed {
+		Tally call() throws SQLException;
+	}
+
+	/**
+	 * Carries an {@link SQLException} out of code that cannot throw checked exceptions, e.g. a
+	 * {@link Stream} returned by {@link Runner#stream(String, RowMapper, Object...)}
+	 */
+	public static class UncheckedSQLException extends RuntimeException {
+
+		public UncheckedSQLException(SQLException cause) {
+			super(cause);
 		}
 
 		@Override
-		public void close() throws Exception {
-			connection.close();
+		public synchronized SQLException getCause() {
+			return (SQLException) super.getCause();
 		}
 	}
 
@@ -0,0 +1,22 @@
+package com.github.nyrkovalex.seed.db;
+
+import java.sql.SQLException;
+
+/**
+ * Base for connection decorators, forwards every call to a {@link #delegate()}
+ */
+abstract class ForwardingConnection extends ForwardingRunner implements Db.Connection {
+
+	@Override
+	protected abstract Db.Connection delegate() throws SQLException;
+
+	@Override
+	public void transaction(Db.TransactionCallback callback) throws SQLException {
+		delegate().transaction(callback);
+	}
+
+	@Override
+	public void close() throws Exception {
+		delegate().close();
+	}
+}
@@ -0,0 +1,88 @@
+package com.github.nyrkovalex.seed.db;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Base for runner decorators, forwards every call to a {@link #delegate()}
+ */
+abstract class ForwardingRunner implements Db.Runner {
+
+	protected abstract Db.Runner delegate() throws SQLException;
+
+	@Override
+	public void run(String sql) throws SQLException {
+		delegate().run(sql);
+	}
+
+	@Override
+	public void one(String sql, Db.VoidCallback callback) throws SQLException {
+		delegate().one(sql, callback);
+	}
+
+	@Override
+	public void query(String sql, Db.VoidCallback callback) throws SQLException {
+		delegate().query(sql, callback);
+	}
+
+	@Override
+	public void run(String sql, Object... params) throws SQLException {
+		delegate().run(sql, params);
+	}
+
+	@Override
+	public void one(String sql, Db.VoidCallback callback, Object... params) throws SQLException {
+		delegate().one(sql, callback, params);
+	}
+
+	@Override
+	public void query(String sql, Db.VoidCallback callback, Object... params)
+			throws SQLException {
+		delegate().query(sql, callback, params);
+	}
+
+	@Override
+	public Db.Batch batch(String sql, int batchSize) throws SQLException {
+		return delegate().batch(sql, batchSize);
+	}
+
+	@Override
+	public <T> Stream<T> stream(String sql, Db.RowMapper<T> mapper, Object... params)
+			throws SQLException {
+		return delegate().stream(sql, mapper, params);
+	}
+
+	@Override
+	public <T> Stream<T> stream(String sql, int fetchSize, Db.RowMapper<T> mapper,
+			Object... params) throws SQLException {
+		return delegate().stream(sql, fetchSize, mapper, params);
+	}
+
+	@Override
+	public <T> List<T> list(String sql, Db.RowReader<T> reader, Object... params)
+			throws SQLException {
+		return delegate().list(sql, reader, params);
+	}
+
+	@Override
+	public void eachInt(String sql, String column, IntConsumer consumer, Object... params)
+			throws SQLException {
+		delegate().eachInt(sql, column, consumer, params);
+	}
+
+	@Override
+	public void eachLong(String sql, String column, LongConsumer consumer, Object... params)
+			throws SQLException {
+		delegate().eachLong(sql, column, consumer, params);
+	}
+
+	@Override
+	public void eachDouble(String sql, String column, DoubleConsumer consumer, Object... params)
+			throws SQLException {
+		delegate().eachDouble(sql, column, consumer, params);
+	}
+}
@@ -0,0 +1,31 @@
+package com.github.nyrkovalex.seed.db;
+
+/**
+ * Receives statement and transaction events from a connection. Implementations are called on the
+ * query path and must be cheap and thread-safe.
+ */
+interface Instrumentation {
+
+	long UNKNOWN = -1;
+
+	Instrumentation NOOP = new Instrumentation() {
+		@Override
+		public void statement(String sql, long nanos, long rows, long updates, boolean failed) {
+		}
+
+		@Override
+		public void transaction(boolean committed) {
+		}
+	};
+
+	/**
+	 * @param sql     statement text as passed by a caller
+	 * @param nanos   time spent running the statement and reading its results
+	 * @param rows    rows read, {@link #UNKNOWN} if results were handed to a caller as is
+	 * @param updates rows updated, {@link #UNKNOWN} if statement returned results
+	 * @param failed  whether statement failed
+	 */
+	void statement(String sql, long nanos, long rows, long updates, boolean failed);
+
+	void transaction(boolean committed);
+}
@@ -0,0 +1,64 @@
+package com.github.nyrkovalex.seed.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * {@link Db.Row} resolving labels through a {@link ColumnPlan}. Single instance is reused for all
+ * rows of a result set.
+ */
+class PlannedRow implements Db.Row {
+
+	private final ResultSet resultSet;
+	private final ColumnPlan plan;
+
+	PlannedRow(ResultSet resultSet, ColumnPlan plan) {
+		this.resultSet = resultSet;
+		this.plan = plan;
+	}
+
+	@Override
+	public int index(String column) throws SQLException {
+		return plan.index(column);
+	}
+
+	@Override
+	public int getInt(String column) throws SQLException {
+		return resultSet.getInt(plan.index(column));
+	}
+
+	@Override
+	public long getLong(String column) throws SQLException {
+		return resultSet.getLong(plan.index(column));
+	}
+
+	@Override
+	public double getDouble(String column) throws SQLException {
+		return resultSet.getDouble(plan.index(column));
+	}
+
+	@Override
+	public boolean getBoolean(String column) throws SQLException {
+		return resultSet.getBoolean(plan.index(column));
+	}
+
+	@Override
+	public String getString(String column) throws SQLException {
+		return resultSet.getString(plan.index(column));
+	}
+
+	@Override
+	public Object getObject(String column) throws SQLException {
+		return resultSet.getObject(plan.index(column));
+	}
+
+	@Override
+	public boolean wasNull() throws SQLException {
+		return resultSet.wasNull();
+	}
+
+	@Override
+	public ResultSet resultSet() {
+		return resultSet;
+	}
+}
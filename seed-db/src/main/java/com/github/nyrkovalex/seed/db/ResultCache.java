@@ -0,0 +1,447 @@
+package com.github.nyrkovalex.seed.db;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Read-through cache of <code>one</code> and <code>query</code> results keyed by SQL text and
+ * parameters. Results are materialized into {@link CachedRowSet}s, every hit replays a copy
+ * with its own cursor so callbacks see a regular {@link ResultSet}.
+ * </p>
+ * <p>
+ * Entries are dropped when least recently used, when older than TTL, or when a write through
+ * any connection wrapped by this cache touches one of the tables they were read from. Writes
+ * inside a transaction invalidate once the transaction ends, reads inside a transaction bypass
+ * the cache entirely.
+ * </p>
+ * <p>
+ * Concurrent misses on the same key wait for a single database call.
+ * </p>
+ */
+class ResultCache implements Db.QueryCache {
+
+	private static final RowSetFactory ROW_SETS = rowSetFactory();
+
+	private final int maxSize;
+	private final long ttlNanos;
+	private final Map<Key, Entry> entries;
+	private final Map<Key, CompletableFuture<CachedRowSet>> loading = new ConcurrentHashMap<>();
+	private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+	private final AtomicLong globalGeneration = new AtomicLong();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	ResultCache(int maxSize, long ttlNanos) {
+		this.maxSize = maxSize;
+		this.ttlNanos = ttlNanos;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	@Override
+	public Db.Connection wrap(Db.Connection connection) {
+		return new CachingConnection(connection);
+	}
+
+	@Override
+	public void invalidate(String table) {
+		invalidate(Collections.singleton(table));
+	}
+
+	@Override
+	public void invalidateAll() {
+		globalGeneration.incrementAndGet();
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	@Override
+	public Db.CacheStats stats() {
+		int size;
+		synchronized (entries) {
+			size = entries.size();
+		}
+		return new Stats(hits.sum(), misses.sum(), evictions.sum(), size);
+	}
+
+	private void invalidate(Set<String> tables) {
+		if (tables.isEmpty()) {
+			invalidateAll();
+			return;
+		}
+		Set<String> normalized = new HashSet<>();
+		for (String table : tables) {
+			String name = SqlTables.normalize(table);
+			normalized.add(name);
+			generation(name).incrementAndGet();
+		}
+		synchronized (entries) {
+			entries.values().removeIf(e -> !Collections.disjoint(e.tables, normalized));
+		}
+	}
+
+	private AtomicLong generation(String table) {
+		return generations.computeIfAbsent(table, t -> new AtomicLong());
+	}
+
+	private long generationOf(Set<String> tables) {
+		long sum = globalGeneration.get();
+		for (String table : tables) {
+			sum += generation(table).get();
+		}
+		return sum;
+	}
+
+	private CachedRowSet lookup(Key key) {
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (System.nanoTime() - entry.loadedAt < ttlNanos) {
+				return entry.rows;
+			}
+			entries.remove(key);
+			evictions.increment();
+			return null;
+		}
+	}
+
+	/**
+	 * Stores an entry unless any of its tables got invalidated since loading started
+	 */
+	private void store(Key key, Entry entry, long generation) {
+		synchronized (entries) {
+			if (generation != generationOf(entry.tables)) {
+				return;
+			}
+			entries.put(key, entry);
+			Iterator<Entry> eldest = entries.values().iterator();
+			while (entries.size() > maxSize) {
+				eldest.next();
+				eldest.remove();
+				evictions.increment();
+			}
+		}
+	}
+
+	private ResultSet rows(Key key, Loader loader) throws SQLException {
+		CachedRowSet cached = lookup(key);
+		if (cached != null) {
+			hits.increment();
+			return replay(cached);
+		}
+		CompletableFuture<CachedRowSet> mine = new CompletableFuture<>();
+		CompletableFuture<CachedRowSet> inFlight = loading.putIfAbsent(key, mine);
+		if (inFlight != null) {
+			hits.increment();
+			return replay(await(inFlight));
+		}
+		misses.increment();
+		try {
+			Set<String> tables = SqlTables.of(key.sql);
+			long generation = generationOf(tables);
+			CachedRowSet rows = ROW_SETS.createCachedRowSet();
+			loader.load(rows::populate);
+			store(key, new Entry(rows, tables, System.nanoTime()), generation);
+			mine.complete(rows);
+			return replay(rows);
+		} catch (SQLException | RuntimeException ex) {
+			mine.completeExceptionally(ex);
+			throw ex;
+		} finally {
+			loading.remove(key, mine);
+		}
+	}
+
+	/**
+	 * Cached rows are never handed out directly, every caller gets a copy with its own cursor
+	 * sharing the same data. Closing a shared copy would clear that data, so callers get copies
+	 * whose <code>close</code> does nothing.
+	 */
+	private static ResultSet replay(CachedRowSet rows) throws SQLException {
+		ResultSet shared = rows.createShared();
+		return (ResultSet) Proxy.newProxyInstance(ResultCache.class.getClassLoader(),
+				new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+					if (method.getName().equals("close") && method.getParameterCount() == 0) {
+						return null;
+					}
+					try {
+						return method.invoke(shared, args);
+					} catch (InvocationTargetException ex) {
+						throw ex.getCause();
+					}
+				});
+	}
+
+	private static CachedRowSet await(CompletableFuture<CachedRowSet> inFlight)
+			throws SQLException {
+		try {
+			return inFlight.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a cached query", ex);
+		} catch (ExecutionException ex) {
+			throw new SQLException(ex.getCause());
+		}
+	}
+
+	private static RowSetFactory rowSetFactory() {
+		try {
+			return RowSetProvider.newFactory();
+		} catch (SQLException ex) {
+			throw new IllegalStateException("No RowSetFactory available", ex);
+		}
+	}
+
+	@FunctionalInterface
+	private interface Loader {
+		void load(Db.VoidCallback populate) throws SQLException;
+	}
+
+	private static final class Key {
+		final String sql;
+		final Object[] params;
+		private final int hash;
+
+		Key(String sql, Object[] params) {
+			this.sql = sql;
+			this.params = params;
+			this.hash = 31 * sql.hashCode() + Arrays.deepHashCode(params);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return sql.equals(other.sql) && Arrays.deepEquals(params, other.params);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static final class Entry {
+		final CachedRowSet rows;
+		final Set<String> tables;
+		final long loadedAt;
+
+		Entry(CachedRowSet rows, Set<String> tables, long loadedAt) {
+			this.rows = rows;
+			this.tables = tables;
+			this.loadedAt = loadedAt;
+		}
+	}
+
+	private static final class Stats implements Db.CacheStats {
+		private final long hits;
+		private final long misses;
+		private final long evictions;
+		private final int size;
+
+		Stats(long hits, long misses, long evictions, int size) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.size = size;
+		}
+
+		@Override
+		public long hits() {
+			return hits;
+		}
+
+		@Override
+		public long misses() {
+			return misses;
+		}
+
+		@Override
+		public long evictions() {
+			return evictions;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("hits=%d, misses=%d, evictions=%d, size=%d", hits, misses,
+					evictions, size);
+		}
+	}
+
+	private final class CachingConnection extends ForwardingConnection {
+
+		private final Db.Connection connection;
+
+		CachingConnection(Db.Connection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		protected Db.Connection delegate() {
+			return connection;
+		}
+
+		@Override
+		public void one(String sql, Db.VoidCallback callback) throws SQLException {
+			one(sql, callback, new Object[0]);
+		}
+
+		@Override
+		public void query(String sql, Db.VoidCallback callback) throws SQLException {
+			query(sql, callback, new Object[0]);
+		}
+
+		@Override
+		public void one(String sql, Db.VoidCallback callback, Object... params)
+				throws SQLException {
+			ResultSet rows = rows(new Key(sql, params), loader(sql, params));
+			if (!rows.next()) {
+				throw new SQLException("Query returned no results");
+			}
+			callback.call(rows);
+		}
+
+		@Override
+		public void query(String sql, Db.VoidCallback callback, Object... params)
+				throws SQLException {
+			callback.call(rows(new Key(sql, params), loader(sql, params)));
+		}
+
+		private Loader loader(String sql, Object[] params) {
+			if (params.length == 0) {
+				return populate -> connection.query(sql, populate);
+			}
+			return populate -> connection.query(sql, populate, params);
+		}
+
+		@Override
+		public void run(String sql) throws SQLException {
+			try {
+				connection.run(sql);
+			} finally {
+				invalidate(SqlTables.of(sql));
+			}
+		}
+
+		@Override
+		public void run(String sql, Object... params) throws SQLException {
+			try {
+				connection.run(sql, params);
+			} finally {
+				invalidate(SqlTables.of(sql));
+			}
+		}
+
+		@Override
+		public Db.Batch batch(String sql, int batchSize) throws SQLException {
+			return new InvalidatingBatch(connection.batch(sql, batchSize), SqlTables.of(sql));
+		}
+
+		@Override
+		public void transaction(Db.TransactionCallback callback) throws SQLException {
+			Set<String> touched = new HashSet<>();
+			boolean[] wrote = { false };
+			try {
+				connection.transaction(runner -> callback.call(new ForwardingRunner() {
+					@Override
+					protected Db.Runner delegate() {
+						return runner;
+					}
+
+					@Override
+					public void run(String sql) throws SQLException {
+						record(sql);
+						runner.run(sql);
+					}
+
+					@Override
+					public void run(String sql, Object... params) throws SQLException {
+						record(sql);
+						runner.run(sql, params);
+					}
+
+					@Override
+					public Db.Batch batch(String sql, int batchSize) throws SQLException {
+						record(sql);
+						return runner.batch(sql, batchSize);
+					}
+
+					private void record(String sql) {
+						wrote[0] = true;
+						touched.addAll(SqlTables.of(sql));
+					}
+				}));
+			} finally {
+				if (wrote[0]) {
+					invalidate(touched);
+				}
+			}
+		}
+	}
+
+	private final class InvalidatingBatch implements Db.Batch {
+
+		private final Db.Batch batch;
+		private final Set<String> tables;
+
+		InvalidatingBatch(Db.Batch batch, Set<String> tables) {
+			this.batch = batch;
+			this.tables = tables;
+		}
+
+		@Override
+		public Db.Batch add(Object... params) throws SQLException {
+			batch.add(params);
+			return this;
+		}
+
+		@Override
+		public int[] execute() throws SQLException {
+			try {
+				return batch.execute();
+			} finally {
+				invalidate(tables);
+			}
+		}
+
+		@Override
+		public void close() throws SQLException {
+			try {
+				batch.close();
+			} finally {
+				invalidate(tables);
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package com.github.nyrkovalex.seed.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks an open {@link ResultSet} one row at a time mapping rows lazily. Statement and result set
+ * are closed once rows are exhausted, mapping fails or the stream is closed, whichever comes
+ * first.
+ */
+class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+	private final Statement statement;
+	private final ResultSet resultSet;
+	private final Db.RowMapper<T> mapper;
+	private final Completion completion;
+	private long rows;
+	private boolean failed;
+	private boolean closed;
+
+	@FunctionalInterface
+	interface Completion {
+		void completed(long rows, boolean failed);
+	}
+
+	ResultSetSpliterator(Statement statement, ResultSet resultSet, Db.RowMapper<T> mapper,
+			Completion completion) {
+		super(Long.MAX_VALUE, Spliterator.ORDERED);
+		this.statement = statement;
+		this.resultSet = resultSet;
+		this.mapper = mapper;
+		this.completion = completion;
+	}
+
+	Stream<T> stream() {
+		return StreamSupport.stream(this, false).onClose(() -> {
+			try {
+				close();
+			} catch (SQLException ex) {
+				throw new Db.UncheckedSQLException(ex);
+			}
+		});
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super T> action) {
+		if (closed) {
+			return false;
+		}
+		try {
+			if (!resultSet.next()) {
+				close();
+				return false;
+			}
+			action.accept(mapper.map(resultSet));
+			rows++;
+			return true;
+		} catch (SQLException ex) {
+			throw new Db.UncheckedSQLException(closeAfter(ex));
+		} catch (RuntimeException ex) {
+			throw closeAfter(ex);
+		}
+	}
+
+	private <E extends Exception> E closeAfter(E ex) {
+		failed = true;
+		try {
+			close();
+		} catch (SQLException closeErr) {
+			ex.addSuppressed(closeErr);
+		}
+		return ex;
+	}
+
+	private void close() throws SQLException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			resultSet.close();
+		} finally {
+			try {
+				statement.close();
+			} finally {
+				completion.completed(rows, failed);
+			}
+		}
+	}
+}
@@ -0,0 +1,410 @@
+package com.github.nyrkovalex.seed.db;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ * Connection spreading reads over replica pools and sending writes and transactions to a primary
+ * pool. Safe to share between threads, every call borrows its own connection.
+ * </p>
+ * <p>
+ * A replica failing to open a connection or failing a statement with a connection error is
+ * ejected for a while, reads go to the remaining replicas or to the primary when none are left.
+ * A replica whose pool times out is not ejected, only that read goes elsewhere.
+ * Once ejection time passes a replica gets traffic again and is ejected anew if it still fails.
+ * Only reads failing to get a connection are retried elsewhere: a statement that failed mid-way
+ * may have fed some rows to a callback already.
+ * </p>
+ */
+class RoutingConnection implements Db.Connection {
+
+	private final Db.Pool primary;
+	private final List<Replica> replicas;
+	private final Db.Balancing balancing;
+	private final long ejectNanos;
+	private final AtomicInteger turn = new AtomicInteger();
+
+	RoutingConnection(Db.Pool primary, List<Db.Pool> replicas, Db.Balancing balancing,
+			long ejectNanos) {
+		this.primary = primary;
+		this.balancing = balancing;
+		this.ejectNanos = ejectNanos;
+		List<Replica> wrapped = new ArrayList<>(replicas.size());
+		for (Db.Pool replica : replicas) {
+			wrapped.add(new Replica(replica));
+		}
+		this.replicas = Collections.unmodifiableList(wrapped);
+	}
+
+	@Override
+	public void run(String sql) throws SQLException {
+		write(c -> {
+			c.run(sql);
+			return null;
+		});
+	}
+
+	@Override
+	public void run(String sql, Object... params) throws SQLException {
+		write(c -> {
+			c.run(sql, params);
+			return null;
+		});
+	}
+
+	@Override
+	public void one(String sql, Db.VoidCallback callback) throws SQLException {
+		read(c -> {
+			c.one(sql, callback);
+			return null;
+		});
+	}
+
+	@Override
+	public void one(String sql, Db.VoidCallback callback, Object... params) throws SQLException {
+		read(c -> {
+			c.one(sql, callback, params);
+			return null;
+		});
+	}
+
+	@Override
+	public void query(String sql, Db.VoidCallback callback) throws SQLException {
+		read(c -> {
+			c.query(sql, callback);
+			return null;
+		});
+	}
+
+	@Override
+	public void query(String sql, Db.VoidCallback callback, Object... params)
+			throws SQLException {
+		read(c -> {
+			c.query(sql, callback, params);
+			return null;
+		});
+	}
+
+	@Override
+	public <T> List<T> list(String sql, Db.RowReader<T> reader, Object... params)
+			throws SQLException {
+		return read(c -> c.list(sql, reader, params));
+	}
+
+	@Override
+	public void eachInt(String sql, String column, IntConsumer consumer, Object... params)
+			throws SQLException {
+		read(c -> {
+			c.eachInt(sql, column, consumer, params);
+			return null;
+		});
+	}
+
+	@Override
+	public void eachLong(String sql, String column, LongConsumer consumer, Object... params)
+			throws SQLException {
+		read(c -> {
+			c.eachLong(sql, column, consumer, params);
+			return null;
+		});
+	}
+
+	@Override
+	public void eachDouble(String sql, String column, DoubleConsumer consumer, Object... params)
+			throws SQLException {
+		read(c -> {
+			c.eachDouble(sql, column, consumer, params);
+			return null;
+		});
+	}
+
+	@Override
+	public <T> Stream<T> stream(String sql, Db.RowMapper<T> mapper, Object... params)
+			throws SQLException {
+		return leasedStream(c -> c.stream(sql, mapper, params));
+	}
+
+	@Override
+	public <T> Stream<T> stream(String sql, int fetchSize, Db.RowMapper<T> mapper,
+			Object... params) throws SQLException {
+		return leasedStream(c -> c.stream(sql, fetchSize, mapper, params));
+	}
+
+	@Override
+	public Db.Batch batch(String sql, int batchSize) throws SQLException {
+		Db.Connection lease = primary.connection();
+		try {
+			return new LeasedBatch(lease.batch(sql, batchSize), lease);
+		} catch (SQLException | RuntimeException ex) {
+			release(lease, ex);
+			throw ex;
+		}
+	}
+
+	@Override
+	public void transaction(Db.TransactionCallback callback) throws SQLException {
+		write(c -> {
+			c.transaction(callback);
+			return null;
+		});
+	}
+
+	@Override
+	public void close() throws SQLException {
+		SQLException err = null;
+		List<Db.Pool> pools = new ArrayList<>();
+		pools.add(primary);
+		replicas.forEach(r -> pools.add(r.pool));
+		for (Db.Pool pool : pools) {
+			try {
+				pool.close();
+			} catch (SQLException ex) {
+				if (err == null) {
+					err = ex;
+				} else {
+					err.addSuppressed(ex);
+				}
+			}
+		}
+		if (err != null) {
+			throw err;
+		}
+	}
+
+	private <T> T write(Db.ConnectionCall<T> call) throws SQLException {
+		Db.Connection lease = primary.connection();
+		T result;
+		try {
+			result = call.call(lease);
+		} catch (SQLException | RuntimeException ex) {
+			release(lease, ex);
+			throw ex;
+		}
+		release(lease);
+		return result;
+	}
+
+	private <T> T read(Db.ConnectionCall<T> call) throws SQLException {
+		SQLException unavailable = null;
+		for (Replica replica : candidates()) {
+			Db.Connection lease;
+			try {
+				lease = replica.pool.connection();
+			} catch (SQLException ex) {
+				borrowFailed(replica, ex);
+				unavailable = chain(unavailable, ex);
+				continue;
+			}
+			replica.outstanding.incrementAndGet();
+			try {
+				T result = call.call(lease);
+				release(lease);
+				return result;
+			} catch (SQLException ex) {
+				if (isConnectionError(ex)) {
+					replica.eject();
+				}
+				release(lease, ex);
+				throw ex;
+			} catch (RuntimeException ex) {
+				release(lease, ex);
+				throw ex;
+			} finally {
+				replica.outstanding.decrementAndGet();
+			}
+		}
+		try {
+			return write(call);
+		} catch (SQLException ex) {
+			if (unavailable != null) {
+				ex.addSuppressed(unavailable);
+			}
+			throw ex;
+		}
+	}
+
+	private <T> Stream<T> leasedStream(Db.ConnectionCall<Stream<T>> open) throws SQLException {
+		Replica replica = null;
+		Db.Connection lease = null;
+		for (Replica candidate : candidates()) {
+			try {
+				lease = candidate.pool.connection();
+				replica = candidate;
+				break;
+			} catch (SQLException ex) {
+				borrowFailed(candidate, ex);
+			}
+		}
+		if (lease == null) {
+			lease = primary.connection();
+		}
+		Replica chosen = replica;
+		Db.Connection leased = lease;
+		if (chosen != null) {
+			chosen.outstanding.incrementAndGet();
+		}
+		Runnable done = () -> {
+			if (chosen != null) {
+				chosen.outstanding.decrementAndGet();
+			}
+			try {
+				release(leased);
+			} catch (SQLException ex) {
+				throw new Db.UncheckedSQLException(ex);
+			}
+		};
+		try {
+			return open.call(leased).onClose(done);
+		} catch (SQLException ex) {
+			if (chosen != null && isConnectionError(ex)) {
+				chosen.eject();
+			}
+			done.run();
+			throw ex;
+		} catch (RuntimeException ex) {
+			done.run();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Replicas to try in order: ejected ones are skipped until their ejection time passes, the
+	 * rest are ordered according to balancing strategy
+	 */
+	private List<Replica> candidates() {
+		long now = System.nanoTime();
+		List<Replica> available = new ArrayList<>(replicas.size());
+		for (Replica replica : replicas) {
+			if (replica.availableAt(now)) {
+				available.add(replica);
+			}
+		}
+		if (available.size() > 1) {
+			Collections.rotate(available, -Math.floorMod(turn.getAndIncrement(), available.size()));
+			if (balancing == Db.Balancing.LEAST_OUTSTANDING) {
+				available.sort(Comparator.comparingInt(r -> r.outstanding.get()));
+			}
+		}
+		return available;
+	}
+
+	/**
+	 * Ejects replica that cannot connect or validate a connection. One whose pool is merely busy
+	 * is healthy, its readers just go elsewhere this time.
+	 */
+	private static void borrowFailed(Replica replica, SQLException ex) {
+		if (!(ex instanceof SQLTimeoutException)) {
+			replica.eject();
+		}
+	}
+
+	private static boolean isConnectionError(SQLException ex) {
+		String state = ex.getSQLState();
+		return ex instanceof SQLNonTransientConnectionException
+				|| ex instanceof SQLTransientConnectionException
+				|| ex instanceof SQLRecoverableException
+				|| (state != null && state.startsWith("08"));
+	}
+
+	private static SQLException chain(SQLException first, SQLException next) {
+		if (first == null) {
+			return next;
+		}
+		first.addSuppressed(next);
+		return first;
+	}
+
+	private static void release(Db.Connection lease) throws SQLException {
+		try {
+			lease.close();
+		} catch (SQLException | RuntimeException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new SQLException(ex);
+		}
+	}
+
+	private static void release(Db.Connection lease, Exception cause) {
+		try {
+			lease.close();
+		} catch (Exception ex) {
+			cause.addSuppressed(ex);
+		}
+	}
+
+	private final class Replica {
+		final Db.Pool pool;
+		final AtomicInteger outstanding = new AtomicInteger();
+		volatile long ejectedUntil;
+		volatile boolean ejected;
+
+		Replica(Db.Pool pool) {
+			this.pool = pool;
+		}
+
+		boolean availableAt(long now) {
+			return !ejected || now - ejectedUntil >= 0;
+		}
+
+		void eject() {
+			ejectedUntil = System.nanoTime() + ejectNanos;
+			ejected = true;
+		}
+	}
+
+	private static final class LeasedBatch implements Db.Batch {
+
+		private final Db.Batch batch;
+		private final Db.Connection lease;
+		private boolean released;
+
+		LeasedBatch(Db.Batch batch, Db.Connection lease) {
+			this.batch = batch;
+			this.lease = lease;
+		}
+
+		@Override
+		public Db.Batch add(Object... params) throws SQLException {
+			batch.add(params);
+			return this;
+		}
+
+		@Override
+		public int[] execute() throws SQLException {
+			try {
+				return batch.execute();
+			} finally {
+				releaseOnce();
+			}
+		}
+
+		@Override
+		public void close() throws SQLException {
+			try {
+				batch.close();
+			} finally {
+				releaseOnce();
+			}
+		}
+
+		private void releaseOnce() throws SQLException {
+			if (!released) {
+				released = true;
+				release(lease);
+			}
+		}
+	}
+}
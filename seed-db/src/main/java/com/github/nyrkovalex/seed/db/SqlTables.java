@@ -0,0 +1,58 @@
+package com.github.nyrkovalex.seed.db;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Best effort extraction of table names a SQL statement touches.
+ * </p>
+ * <p>
+ * Understands <code>from</code> lists (including comma joins), <code>join</code>,
+ * <code>into</code>, <code>update</code> and <code>table</code> clauses. Names are lower-cased
+ * and stripped of quotes and schema.
+ * </p>
+ */
+final class SqlTables {
+
+	private static final Pattern SINGLE = Pattern.compile(
+			"\\b(?:join|into|update|table)\\s+([\\w.$\"`\\[\\]]+)",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern FROM_LIST = Pattern.compile(
+			"\\bfrom\\s+([^(\\s].*?)(?=\\b(?:where|group|order|having|limit|offset|fetch|union"
+					+ "|intersect|except|join|inner|left|right|full|cross|natural|on|for)\\b|[();]|$)",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	private SqlTables() {
+		// Module
+	}
+
+	static Set<String> of(String sql) {
+		Set<String> tables = new LinkedHashSet<>();
+		Matcher single = SINGLE.matcher(sql);
+		while (single.find()) {
+			tables.add(normalize(single.group(1)));
+		}
+		Matcher from = FROM_LIST.matcher(sql);
+		while (from.find()) {
+			for (String item : from.group(1).split(",")) {
+				String trimmed = item.trim();
+				if (trimmed.isEmpty()) {
+					continue;
+				}
+				tables.add(normalize(trimmed.split("\\s+")[0]));
+			}
+		}
+		tables.remove("");
+		return tables;
+	}
+
+	static String normalize(String name) {
+		String unquoted = name.replaceAll("[\"`\\[\\]]", "");
+		int dot = unquoted.lastIndexOf('.');
+		return unquoted.substring(dot + 1).toLowerCase(Locale.ROOT);
+	}
+}
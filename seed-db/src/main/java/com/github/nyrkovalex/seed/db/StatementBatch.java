@@ -0,0 +1,124 @@
+package com.github.nyrkovalex.seed.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Collects parameter sets for a single {@link PreparedStatement} and sends them to the database
+ * every <code>batchSize</code> rows.
+ */
+class StatementBatch implements Db.Batch {
+
+	private final String sql;
+	private final int batchSize;
+	private final StatementCache statements;
+	private final Instrumentation instrumentation;
+	private PreparedStatement statement;
+	private int pending;
+	private int[] counts = new int[16];
+	private int rows;
+
+	StatementBatch(String sql, int batchSize, StatementCache statements,
+			Instrumentation instrumentation) throws SQLException {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive");
+		}
+		this.sql = sql;
+		this.batchSize = batchSize;
+		this.statements = statements;
+		this.instrumentation = instrumentation;
+		this.statement = statements.acquire(sql);
+	}
+
+	@Override
+	public Db.Batch add(Object... params) throws SQLException {
+		ensureOpen();
+		try {
+			for (int i = 0; i < params.length; i++) {
+				statement.setObject(i + 1, params[i]);
+			}
+			statement.addBatch();
+			if (++pending == batchSize) {
+				flush();
+			}
+		} catch (SQLException | RuntimeException ex) {
+			abort(ex);
+			throw ex;
+		}
+		return this;
+	}
+
+	@Override
+	public int[] execute() throws SQLException {
+		ensureOpen();
+		try {
+			flush();
+		} catch (SQLException | RuntimeException ex) {
+			abort(ex);
+			throw ex;
+		}
+		statements.release(sql, statement);
+		statement = null;
+		return Arrays.copyOf(counts, rows);
+	}
+
+	@Override
+	public void close() throws SQLException {
+		if (statement == null) {
+			return;
+		}
+		try {
+			statement.clearBatch();
+		} catch (SQLException ex) {
+			abort(ex);
+			throw ex;
+		}
+		statements.release(sql, statement);
+		statement = null;
+	}
+
+	private void flush() throws SQLException {
+		if (pending == 0) {
+			return;
+		}
+		long started = System.nanoTime();
+		int[] flushed;
+		try {
+			flushed = statement.executeBatch();
+		} catch (SQLException | RuntimeException ex) {
+			instrumentation.statement(sql, System.nanoTime() - started, Instrumentation.UNKNOWN,
+					Instrumentation.UNKNOWN, true);
+			throw ex;
+		}
+		instrumentation.statement(sql, System.nanoTime() - started, Instrumentation.UNKNOWN,
+				updates(flushed), false);
+		pending = 0;
+		if (rows + flushed.length > counts.length) {
+			counts = Arrays.copyOf(counts, Math.max(counts.length * 2, rows + flushed.length));
+		}
+		System.arraycopy(flushed, 0, counts, rows, flushed.length);
+		rows += flushed.length;
+	}
+
+	private static long updates(int[] counts) {
+		long updates = 0;
+		for (int count : counts) {
+			if (count > 0) {
+				updates += count;
+			}
+		}
+		return updates;
+	}
+
+	private void abort(Exception cause) {
+		statements.discard(statement, cause);
+		statement = null;
+	}
+
+	private void ensureOpen() throws SQLException {
+		if (statement == null) {
+			throw new SQLException("Batch is already executed or closed");
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.github.nyrkovalex.seed.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * LRU cache of {@link PreparedStatement}s keyed by SQL text, bound to a single connection.
+ * </p>
+ * <p>
+ * A statement is taken out of the cache while in use and put back on release, so nested calls
+ * running the same SQL never share a statement (and its result set). Statements pushed out of the
+ * cache are closed.
+ * </p>
+ * <p>
+ * Not thread-safe, just like the connection it belongs to
+ * </p>
+ */
+class StatementCache implements AutoCloseable {
+
+	private final java.sql.Connection connection;
+	private final Map<String, PreparedStatement> statements;
+
+	StatementCache(java.sql.Connection connection, int maxSize) {
+		this.connection = connection;
+		this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() <= maxSize) {
+					return false;
+				}
+				closeQuietly(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	PreparedStatement acquire(String sql) throws SQLException {
+		PreparedStatement cached = statements.remove(sql);
+		return cached != null ? cached : connection.prepareStatement(sql);
+	}
+
+	void release(String sql, PreparedStatement statement) throws SQLException {
+		if (statements.containsKey(sql)) {
+			statement.close();
+			return;
+		}
+		statement.clearParameters();
+		statements.put(sql, statement);
+	}
+
+	void discard(PreparedStatement statement, Exception cause) {
+		try {
+			statement.close();
+		} catch (SQLException ex) {
+			cause.addSuppressed(ex);
+		}
+	}
+
+	@Override
+	public void close() throws SQLException {
+		List<PreparedStatement> open = new ArrayList<>(statements.values());
+		statements.clear();
+		SQLException err = null;
+		for (PreparedStatement statement : open) {
+			try {
+				statement.close();
+			} catch (SQLException ex) {
+				if (err == null) {
+					err = ex;
+				} else {
+					err.addSuppressed(ex);
+				}
+			}
+		}
+		if (err != null) {
+			throw err;
+		}
+	}
+
+	private static void closeQuietly(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (SQLException ex) {
+			// Evicted statement is of no use anyway
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package com.github.nyrkovalex.seed.db;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Per-statement latency histograms, row and update counters and transaction outcomes.
+ * Statements are grouped by normalized SQL: literals replaced with <code>?</code> and whitespace
+ * collapsed.
+ * </p>
+ * <p>
+ * Recording takes no locks: counters are {@link LongAdder}s and statement groups are looked up
+ * in a {@link ConcurrentHashMap} keyed by raw SQL text so normalization runs once per distinct
+ * statement. Statements taking longer than a threshold are logged as slow.
+ * </p>
+ */
+class StatementMetrics implements Db.Metrics, Instrumentation {
+
+	private static final Logger LOG = Logger.getLogger(StatementMetrics.class.getName());
+	private static final int BUCKETS = 32;
+	private static final int MAX_RAW_KEYS = 10_000;
+
+	private final long slowQueryNanos;
+	private final Map<String, Group> byRawSql = new ConcurrentHashMap<>();
+	private final Map<String, Group> byNormalizedSql = new ConcurrentHashMap<>();
+	private final LongAdder commits = new LongAdder();
+	private final LongAdder rollbacks = new LongAdder();
+
+	StatementMetrics(long slowQueryNanos) {
+		this.slowQueryNanos = slowQueryNanos;
+	}
+
+	@Override
+	public void statement(String sql, long nanos, long rows, long updates, boolean failed) {
+		group(sql).record(nanos, rows, updates, failed);
+		if (nanos >= slowQueryNanos) {
+			LOG.warning(String.format("Slow statement took %d ms: %s",
+					TimeUnit.NANOSECONDS.toMillis(nanos), sql));
+		}
+	}
+
+	@Override
+	public void transaction(boolean committed) {
+		(committed ? commits : rollbacks).increment();
+	}
+
+	@Override
+	public Db.MetricsSnapshot snapshot() {
+		Map<String, Db.StatementStats> statements = new LinkedHashMap<>();
+		byNormalizedSql.forEach((sql, group) -> statements.put(sql, group.snapshot()));
+		return new Snapshot(Collections.unmodifiableMap(statements), commits.sum(),
+				rollbacks.sum());
+	}
+
+	private Group group(String sql) {
+		Group group = byRawSql.get(sql);
+		if (group != null) {
+			return group;
+		}
+		String normalized = normalize(sql);
+		group = byNormalizedSql.get(normalized);
+		if (group == null) {
+			group = byNormalizedSql.computeIfAbsent(normalized, k -> new Group());
+		}
+		// Raw SQL may carry inline literals, stop remembering it once there's too much of it
+		if (byRawSql.size() < MAX_RAW_KEYS) {
+			byRawSql.put(sql, group);
+		}
+		return group;
+	}
+
+	static String normalize(String sql) {
+		StringBuilder out = new StringBuilder(sql.length());
+		boolean pendingSpace = false;
+		int i = 0;
+		int length = sql.length();
+		while (i < length) {
+			char c = sql.charAt(i);
+			if (Character.isWhitespace(c)) {
+				pendingSpace = out.length() > 0;
+				i++;
+				continue;
+			}
+			if (pendingSpace) {
+				out.append(' ');
+				pendingSpace = false;
+			}
+			if (c == '\'') {
+				i = skipString(sql, i + 1);
+				out.append('?');
+			} else if (Character.isDigit(c) && !continuesIdentifier(out)) {
+				while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+					i++;
+				}
+				out.append('?');
+			} else {
+				out.append(c);
+				i++;
+			}
+		}
+		return out.toString();
+	}
+
+	private static int skipString(String sql, int from) {
+		int i = from;
+		while (i < sql.length()) {
+			if (sql.charAt(i) == '\'') {
+				if (i + 1 < sql.length() && sql.charAt(i + 1) == '\'') {
+					i += 2;
+					continue;
+				}
+				return i + 1;
+			}
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean continuesIdentifier(StringBuilder out) {
+		if (out.length() == 0) {
+			return false;
+		}
+		char prev = out.charAt(out.length() - 1);
+		return Character.isLetterOrDigit(prev) || prev == '_' || prev == '$';
+	}
+
+	/**
+	 * Bucket <code>i</code> counts statements that took less than <code>2^i</code> microseconds
+	 * (and at least <code>2^(i-1)</code>), the last one takes everything slower
+	 */
+	private static int bucket(long nanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		return Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+	}
+
+	private static final class Group {
+		final LongAdder count = new LongAdder();
+		final LongAdder errors = new LongAdder();
+		final LongAdder totalNanos = new LongAdder();
+		final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+		final LongAdder rows = new LongAdder();
+		final LongAdder updates = new LongAdder();
+		final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+		Group() {
+			for (int i = 0; i < BUCKETS; i++) {
+				histogram[i] = new LongAdder();
+			}
+		}
+
+		void record(long nanos, long rows, long updates, boolean failed) {
+			count.increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulate(nanos);
+			histogram[bucket(nanos)].increment();
+			if (failed) {
+				errors.increment();
+			}
+			if (rows > 0) {
+				this.rows.add(rows);
+			}
+			if (updates > 0) {
+				this.updates.add(updates);
+			}
+		}
+
+		Db.StatementStats snapshot() {
+			long[] buckets = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets[i] = histogram[i].sum();
+			}
+			return new Stats(count.sum(), errors.sum(), totalNanos.sum(), maxNanos.get(),
+					rows.sum(), updates.sum(), buckets);
+		}
+	}
+
+	private static final class Stats implements Db.StatementStats {
+		private final long count;
+		private final long errors;
+		private final long totalNanos;
+		private final long maxNanos;
+		private final long rows;
+		private final long updates;
+		private final long[] histogram;
+
+		Stats(long count, long errors, long totalNanos, long maxNanos, long rows, long updates,
+				long[] histogram) {
+			this.count = count;
+			this.errors = errors;
+			this.totalNanos = totalNanos;
+			this.maxNanos = maxNanos;
+			this.rows = rows;
+			this.updates = updates;
+			this.histogram = histogram;
+		}
+
+		@Override
+		public long count() {
+			return count;
+		}
+
+		@Override
+		public long errors() {
+			return errors;
+		}
+
+		@Override
+		public long totalNanos() {
+			return totalNanos;
+		}
+
+		@Override
+		public long maxNanos() {
+			return maxNanos;
+		}
+
+		@Override
+		public long rows() {
+			return rows;
+		}
+
+		@Override
+		public long updates() {
+			return updates;
+		}
+
+		@Override
+		public long[] histogram() {
+			return histogram.clone();
+		}
+
+		@Override
+		public long percentileNanos(double percentile) {
+			long total = 0;
+			for (long bucket : histogram) {
+				total += bucket;
+			}
+			long rank = (long) Math.ceil(total * percentile / 100.0);
+			long seen = 0;
+			for (int i = 0; i < histogram.length; i++) {
+				seen += histogram[i];
+				if (seen >= rank && seen > 0) {
+					return Math.min(TimeUnit.MICROSECONDS.toNanos(1L << i), maxNanos);
+				}
+			}
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			long avgNanos = count == 0 ? 0 : totalNanos / count;
+			return String.format(
+					"count=%d, errors=%d, avg=%dus, p99=%dus, max=%dus, rows=%d, updates=%d",
+					count, errors, TimeUnit.NANOSECONDS.toMicros(avgNanos),
+					TimeUnit.NANOSECONDS.toMicros(percentileNanos(99)),
+					TimeUnit.NANOSECONDS.toMicros(maxNanos), rows, updates);
+		}
+	}
+
+	private static final class Snapshot implements Db.MetricsSnapshot {
+		private final Map<String, Db.StatementStats> statements;
+		private final long commits;
+		private final long rollbacks;
+
+		Snapshot(Map<String, Db.StatementStats> statements, long commits, long rollbacks) {
+			this.statements = statements;
+			this.commits = commits;
+			this.rollbacks = rollbacks;
+		}
+
+		@Override
+		public Map<String, Db.StatementStats> statements() {
+			return statements;
+		}
+
+		@Override
+		public long commits() {
+			return commits;
+		}
+
+		@Override
+		public long rollbacks() {
+			return rollbacks;
+		}
+
+		@Override
+		public double commitRatio() {
+			long total = commits + rollbacks;
+			return total == 0 ? 0 : (double) commits / total;
+		}
+	}
+}
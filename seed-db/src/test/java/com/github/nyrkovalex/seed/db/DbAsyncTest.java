@@ -0,0 +1,85 @@
+package com.github.nyrkovalex.seed.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class DbAsyncTest {
+
+	Db.Pool pool;
+
+	@Before
+	public void createPool() throws Exception {
+		pool = Db.connectTo("jdbc:h2:mem:async;DB_CLOSE_DELAY=-1")
+				.pooled()
+				.maxSize(4)
+				.with(new org.h2.Driver());
+		try (Db.Connection conn = pool.connection()) {
+			conn.run("create table users (id int primary key, name varchar)");
+			conn.run("insert into users (id, name) values (1, 'Dude')");
+		}
+	}
+
+	@After
+	public void destroyPool() throws Exception {
+		try (Db.Connection conn = pool.connection()) {
+			conn.run("drop table users");
+		}
+		pool.close();
+	}
+
+	@Test
+	public void testShouldFanOutQueries() throws Exception {
+		try (Db.Async async = Db.async(pool).concurrency(4).build()) {
+			List<CompletableFuture<List<String>>> futures = new ArrayList<>();
+			for (int i = 0; i < 50; i++) {
+				futures.add(async.list("select name from users where id = ?",
+						row -> row.getString("name"), 1));
+			}
+			for (CompletableFuture<List<String>> future : futures) {
+				assertThat(future.get(5, TimeUnit.SECONDS).get(0), is("Dude"));
+			}
+		}
+	}
+
+	@Test
+	public void testShouldRejectWhenFull() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		try (Db.Async async = Db.async(pool)
+				.concurrency(1)
+				.queueSize(0)
+				.whenFull(Db.Backpressure.FAIL)
+				.build()) {
+			CompletableFuture<Void> busy = async.call(c -> {
+				try {
+					release.await();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				return null;
+			});
+			try {
+				async.run("select 1").get();
+				fail("Call should have been rejected");
+			} catch (ExecutionException ex) {
+				assertThat(ex.getCause(), instanceOf(RejectedExecutionException.class));
+			} finally {
+				release.countDown();
+			}
+			busy.get(5, TimeUnit.SECONDS);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package com.github.nyrkovalex.seed.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class DbBulkLoadTest {
+
+	Db.Pool pool;
+
+	@Before
+	public void createPool() throws Exception {
+		pool = Db.connectTo("jdbc:h2:mem:load")
+				.pooled()
+				.minSize(1)
+				.maxSize(4)
+				.with(new org.h2.Driver());
+		try (Db.Connection conn = pool.connection()) {
+			conn.run("create table users (id int primary key, name varchar not null)");
+		}
+	}
+
+	@After
+	public void destroyPool() throws Exception {
+		pool.close();
+	}
+
+	private int count() throws Exception {
+		try (Db.Connection conn = pool.connection()) {
+			int[] count = { 0 };
+			conn.one("select count(*) c from users", rs -> count[0] = rs.getInt("c"));
+			return count[0];
+		}
+	}
+
+	private Db.BulkLoadBuilder load() {
+		return Db.bulkLoad(pool, "insert into users (id, name) values (?, ?)")
+				.workers(3)
+				.batchSize(10)
+				.commitEvery(30)
+				.queueSize(20);
+	}
+
+	@Test
+	public void testShouldLoadAllRows() throws Exception {
+		Db.LoadStats stats;
+		try (Db.BulkLoad load = load().start()) {
+			for (int i = 0; i < 1005; i++) {
+				load.add(i, "user" + i);
+			}
+			stats = load.finish();
+		}
+		assertThat(stats.loaded(), is(1005L));
+		assertThat(stats.failed(), is(0L));
+		assertThat(count(), is(1005));
+	}
+
+	@Test
+	public void testShouldSendFailedRowsToDeadLetter() throws Exception {
+		List<Object[]> rejected = new CopyOnWriteArrayList<>();
+		Db.LoadStats stats;
+		try (Db.BulkLoad load = load().retries(1)
+				.deadLetter((rows, cause) -> rejected.addAll(rows))
+				.start()) {
+			for (int i = 0; i < 100; i++) {
+				load.add(i, i == 55 ? null : "user" + i);
+			}
+			stats = load.finish();
+		}
+		assertThat(rejected.size(), is(10));
+		assertThat(stats.failed(), is(10L));
+		assertThat(stats.loaded(), is(90L));
+		assertThat(count(), is(90));
+	}
+
+	@Test
+	public void testShouldStopLoadWithoutDeadLetter() throws Exception {
+		try (Db.BulkLoad load = load().retries(0).start()) {
+			load.add(1, null);
+			load.finish();
+			fail("Load should have failed");
+		} catch (SQLException ex) {
+			assertThat(count(), is(0));
+		}
+	}
+}
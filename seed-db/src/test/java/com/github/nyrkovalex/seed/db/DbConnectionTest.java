@@ -4,11 +4,20 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class DbConnectionTest {
@@ -105,4 +114,194 @@ public class DbConnectionTest {
 		}
 		assertThat(userCount(), is(3));
 	}
+
+	@Test
+	public void testShouldInsertUserWithParams() throws Exception {
+		conn.run("insert into users(id, name) values (?, ?)", 4, "Jesus");
+		conn.one("select name from users where id = ?", rs -> {
+			assertThat(rs.getString(1), is("Jesus"));
+		}, 4);
+	}
+
+	@Test
+	public void testShouldReuseStatementForSameSql() throws Exception {
+		List<Statement> statements = new ArrayList<>();
+		for (int id = 1; id <= 3; id++) {
+			int expected = id;
+			conn.one("select id from users where id = ?", rs -> {
+				assertThat(rs.getInt(1), is(expected));
+				statements.add(rs.getStatement());
+			}, id);
+		}
+		assertThat(statements.get(1), sameInstance(statements.get(0)));
+		assertThat(statements.get(2), sameInstance(statements.get(0)));
+	}
+
+	@Test
+	public void testShouldEvictLeastRecentlyUsedStatement() throws Exception {
+		try (Db.Connection small = Db.connectTo("jdbc:h2:mem:seed")
+				.statementCacheSize(2)
+				.with(new org.h2.Driver())) {
+			List<Statement> statements = new ArrayList<>();
+			for (String sql : Arrays.asList("select ?", "select 1 + ?", "select ?", "select 2 + ?",
+					"select 1 + ?", "select ?")) {
+				small.one(sql, rs -> {
+					statements.add(rs.getStatement());
+				}, 1);
+			}
+			// First statement was used more recently than the second one when the third came in
+			assertThat(statements.get(2), sameInstance(statements.get(0)));
+			assertThat(statements.get(1).isClosed(), is(true));
+			assertThat(statements.get(4), not(sameInstance(statements.get(1))));
+			// Preparing the second one again pushed out the first
+			assertThat(statements.get(0).isClosed(), is(true));
+			assertThat(statements.get(5), not(sameInstance(statements.get(0))));
+		}
+	}
+
+	@Test
+	public void testShouldRunNestedQueriesWithSameSql() throws Exception {
+		String sql = "select id from users where id >= ? order by id";
+		List<Integer> ids = new ArrayList<>();
+		conn.query(sql, outer -> {
+			while (outer.next()) {
+				conn.query(sql, inner -> {
+					while (inner.next()) {
+						ids.add(inner.getInt(1));
+					}
+				}, outer.getInt(1));
+			}
+		}, 2);
+		assertThat(ids, is(Arrays.asList(2, 3, 3)));
+	}
+
+	@Test
+	public void testShouldStreamUsers() throws Exception {
+		try (Stream<String> names = conn.stream("select name from users where id > ? order by id",
+				rs -> rs.getString(1), 1)) {
+			assertThat(names.collect(Collectors.toList()), is(Arrays.asList("Walter", "Donny")));
+		}
+	}
+
+	@Test
+	public void testShouldCloseResultSetWithStream() throws Exception {
+		ResultSet[] wrap = { null };
+		try (Stream<Integer> ids = conn.stream("select id from users order by id", 1, rs -> {
+			wrap[0] = rs;
+			return rs.getInt(1);
+		})) {
+			assertThat(ids.findFirst().get(), is(1));
+			assertThat(wrap[0].isClosed(), is(false));
+		}
+		assertThat(wrap[0].isClosed(), is(true));
+	}
+
+	@Test
+	public void testShouldReadRowsByLabel() throws Exception {
+		List<String> users = conn.list("select id, name from users order by id",
+				row -> row.getInt("ID") + ":" + row.getString("name"));
+		assertThat(users, is(Arrays.asList("1:Dude", "2:Walter", "3:Donny")));
+	}
+
+	@Test
+	public void testShouldResolveLabelsAgainAfterColumnsChange() throws Exception {
+		String sql = "select * from users order by id";
+		assertThat(conn.list(sql, row -> row.getString("name")).get(0), is("Dude"));
+		// Same column count, different order
+		conn.run("alter table users drop column name");
+		conn.run("alter table users add column name varchar before id");
+		conn.run("update users set name = 'Maude'");
+		assertThat(conn.list(sql, row -> row.getString("name")).get(0), is("Maude"));
+		assertThat(conn.list(sql, row -> row.getInt("id")).get(0), is(1));
+	}
+
+	@Test
+	public void testShouldSumIntColumn() throws Exception {
+		long[] sum = { 0 };
+		conn.eachInt("select id from users where id > ?", "id", id -> sum[0] += id, 1);
+		assertThat(sum[0], is(5L));
+	}
+
+	@Test
+	public void testShouldRecordStatementMetrics() throws Exception {
+		Db.Metrics metrics = Db.metrics().build();
+		try (Db.Connection instrumented = Db.connectTo("jdbc:h2:mem:metrics")
+				.instrumentedBy(metrics)
+				.with(new org.h2.Driver())) {
+			instrumented.run("create table users (id int primary key, name varchar)");
+			instrumented.run("insert into users (id, name) values (1, 'Dude')");
+			instrumented.run("insert into users (id, name) values (2,  'Walter')");
+			instrumented.list("select name from users", row -> row.getString("name"));
+			instrumented.transaction(t -> false);
+		}
+		Db.MetricsSnapshot snapshot = metrics.snapshot();
+		Db.StatementStats inserts =
+				snapshot.statements().get("insert into users (id, name) values (?, ?)");
+		assertThat(inserts.count(), is(2L));
+		assertThat(inserts.updates(), is(2L));
+		assertThat(snapshot.statements().get("select name from users").rows(), is(2L));
+		assertThat(snapshot.rollbacks(), is(1L));
+	}
+
+	@Test
+	public void testShouldReturnCountForEveryBatchedRow() throws Exception {
+		int[] counts;
+		try (Db.Batch batch = conn.batch("insert into users(id, name) values (?, ?)", 2)) {
+			batch.add(4, "Jesus").add(5, "Maude").add(6, "Bunny");
+			counts = batch.execute();
+		}
+		assertThat(counts.length, is(3));
+		assertThat(userCount(), is(6));
+	}
+
+	@Test
+	public void testShouldRollbackBatchWithTransaction() throws Exception {
+		try {
+			conn.transaction(t -> {
+				try (Db.Batch batch = t.batch("insert into users(id, name) values (?, ?)", 2)) {
+					batch.add(4, "Jesus").add(5, "Maude").add(1, "Duplicate");
+					batch.execute();
+				}
+				return true;
+			});
+		} catch (SQLException err) {
+			// That's OK
+		}
+		assertThat(userCount(), is(3));
+	}
+
+	@Test
+	public void testShouldInsertEveryRowInBatches() throws Exception {
+		// Two full batches are flushed while adding, the rest by execute
+		int rows = 1234;
+		conn.run("create table events (id int primary key, name varchar)");
+		int[] counts = insertBatched(0, rows);
+		assertThat(counts.length, is(rows));
+		for (int count : counts) {
+			assertThat(count, is(1));
+		}
+		conn.one("select count(*), count(distinct id), min(id), max(id) from events", rs -> {
+			assertThat(rs.getInt(1), is(rows));
+			assertThat(rs.getInt(2), is(rows));
+			assertThat(rs.getInt(3), is(0));
+			assertThat(rs.getInt(4), is(rows - 1));
+		});
+		conn.one("select name from events where id = 1000", rs -> {
+			assertThat(rs.getString(1), is("event1000"));
+		});
+	}
+
+	private int[] insertBatched(int from, int count) throws SQLException {
+		int[][] counts = { null };
+		conn.transaction(t -> {
+			try (Db.Batch batch = t.batch("insert into events(id, name) values (?, ?)", 500)) {
+				for (int i = from; i < from + count; i++) {
+					batch.add(i, "event" + i);
+				}
+				counts[0] = batch.execute();
+			}
+			return true;
+		});
+		return counts[0];
+	}
 }
@@ -0,0 +1,152 @@
+package com.github.nyrkovalex.seed.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DbPoolTest {
+
+	Db.Pool pool;
+
+	@Before
+	public void createPool() throws Exception {
+		pool = Db.connectTo("jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1")
+				.pooled()
+				.minSize(1)
+				.maxSize(2)
+				.borrowTimeout(Duration.ofMillis(200))
+				.with(new org.h2.Driver());
+		try (Db.Connection conn = pool.connection()) {
+			conn.run("create table users (id int primary key, name varchar)");
+			conn.run("insert into users (id, name) values (1, 'Dude')");
+		}
+	}
+
+	@After
+	public void destroyPool() throws Exception {
+		try (Db.Connection conn = pool.connection()) {
+			conn.run("drop table users");
+		}
+		pool.close();
+	}
+
+	@Test
+	public void testShouldOpenMinConnectionsEagerly() throws Exception {
+		assertThat(pool.idle(), is(1));
+		assertThat(pool.active(), is(0));
+	}
+
+	@Test
+	public void testShouldReturnConnectionOnClose() throws Exception {
+		try (Db.Connection conn = pool.connection()) {
+			conn.one("select name from users where id = 1", rs -> {
+				assertThat(rs.getString(1), is("Dude"));
+			});
+			assertThat(pool.active(), is(1));
+			assertThat(pool.idle(), is(0));
+		}
+		assertThat(pool.active(), is(0));
+		assertThat(pool.idle(), is(1));
+	}
+
+	@Test(expected = SQLException.class)
+	public void testShouldRejectCallsAfterReturn() throws Exception {
+		Db.Connection conn = pool.connection();
+		conn.close();
+		conn.run("select 1");
+	}
+
+	@Test(expected = SQLTimeoutException.class)
+	public void testShouldTimeOutWhenExhausted() throws Exception {
+		try (Db.Connection first = pool.connection();
+		     Db.Connection second = pool.connection()) {
+			pool.connection();
+		}
+	}
+
+	@Test
+	public void testShouldHandOffConnectionToWaiter() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Db.Connection first = pool.connection();
+			Db.Connection second = pool.connection();
+			CountDownLatch started = new CountDownLatch(1);
+			Future<Integer> waiter = executor.submit(() -> {
+				started.countDown();
+				try (Db.Connection conn = pool.connection()) {
+					int[] wrap = { 0 };
+					conn.one("select count(*) from users", rs -> {
+						wrap[0] = rs.getInt(1);
+					});
+					return wrap[0];
+				}
+			});
+			started.await();
+			while (pool.waiting() == 0) {
+				Thread.sleep(1);
+			}
+			first.close();
+			assertThat(waiter.get(1, TimeUnit.SECONDS), is(1));
+			second.close();
+			assertThat(pool.waiting(), is(0));
+			assertThat(pool.active(), is(0));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testShouldPassOnConnectionHandedOffToInterruptedWaiter() throws Exception {
+		Field lockField = ConnectionPool.class.getDeclaredField("lock");
+		lockField.setAccessible(true);
+		ReentrantLock lock = (ReentrantLock) lockField.get(pool);
+		Db.Connection first = pool.connection();
+		Db.Connection second = pool.connection();
+		AtomicReference<Exception> failure = new AtomicReference<>();
+		Thread waiter = new Thread(() -> {
+			try {
+				pool.connection().close();
+			} catch (Exception ex) {
+				failure.set(ex);
+			}
+		});
+		waiter.start();
+		while (pool.waiting() == 0) {
+			Thread.sleep(1);
+		}
+		// Waiter wakes up interrupted but cannot get the lock until connection is handed to it
+		lock.lock();
+		try {
+			waiter.interrupt();
+			while (!lock.hasQueuedThread(waiter)) {
+				Thread.sleep(1);
+			}
+			first.close();
+		} finally {
+			lock.unlock();
+		}
+		waiter.join(1000);
+		assertThat(failure.get() instanceof SQLException, is(true));
+		assertThat(pool.idle(), is(1));
+		second.close();
+		try (Db.Connection conn = pool.connection();
+		     Db.Connection another = pool.connection()) {
+			assertThat(pool.active(), is(2));
+		}
+	}
+}
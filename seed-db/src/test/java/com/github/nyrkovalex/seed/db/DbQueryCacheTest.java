@@ -0,0 +1,165 @@
+package com.github.nyrkovalex.seed.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DbQueryCacheTest {
+
+	Db.QueryCache cache;
+	Db.Connection conn;
+
+	@Before
+	public void createDb() throws Exception {
+		cache = Db.queryCache().maxSize(2).build();
+		conn = cache.wrap(Db.connectTo("jdbc:h2:mem:cache").with(new org.h2.Driver()));
+		conn.run("create table users (id int primary key, name varchar)");
+		conn.run("insert into users (id, name) values (1, 'Dude')");
+		conn.run("insert into users (id, name) values (2, 'Walter')");
+	}
+
+	@After
+	public void destroyDb() throws Exception {
+		conn.close();
+	}
+
+	private String name(int id) throws SQLException {
+		String[] wrap = { null };
+		conn.one("select name from users where id = ?", rs -> {
+			wrap[0] = rs.getString("name");
+		}, id);
+		return wrap[0];
+	}
+
+	@Test
+	public void testShouldHitCacheOnRepeatedQuery() throws Exception {
+		assertThat(name(1), is("Dude"));
+		assertThat(name(1), is("Dude"));
+		assertThat(cache.stats().misses(), is(1L));
+		assertThat(cache.stats().hits(), is(1L));
+	}
+
+	@Test
+	public void testShouldKeyOnParams() throws Exception {
+		assertThat(name(1), is("Dude"));
+		assertThat(name(2), is("Walter"));
+		assertThat(cache.stats().misses(), is(2L));
+	}
+
+	@Test
+	public void testShouldEvictLeastRecentlyUsed() throws Exception {
+		name(1);
+		name(2);
+		name(1);
+		conn.query("select * from users", rs -> {
+		});
+		assertThat(cache.stats().evictions(), is(1L));
+		name(1);
+		assertThat(cache.stats().hits(), is(2L));
+	}
+
+	@Test
+	public void testShouldInvalidateOnWrite() throws Exception {
+		assertThat(name(1), is("Dude"));
+		conn.run("update users set name = ? where id = ?", "Lebowski", 1);
+		assertThat(name(1), is("Lebowski"));
+	}
+
+	@Test
+	public void testShouldInvalidateOnCommit() throws Exception {
+		assertThat(name(2), is("Walter"));
+		conn.transaction(t -> {
+			t.run("update users set name = 'Sobchak' where id = 2");
+			return true;
+		});
+		assertThat(name(2), is("Sobchak"));
+	}
+
+	@Test
+	public void testShouldKeepCachedRowsWhenCallbackClosesThem() throws Exception {
+		conn.one("select name from users where id = ?", rs -> {
+			rs.close();
+		}, 1);
+		assertThat(name(1), is("Dude"));
+		assertThat(cache.stats().hits(), is(1L));
+	}
+
+	@Test
+	public void testShouldExpireEntriesAfterTtl() throws Exception {
+		Db.QueryCache shortLived = Db.queryCache().ttl(Duration.ofMillis(50)).build();
+		Db.Connection expiring = shortLived.wrap(Db.connectTo("jdbc:h2:mem:cache")
+				.with(new org.h2.Driver()));
+		try {
+			String sql = "select count(*) from users";
+			expiring.one(sql, rs -> {
+			});
+			expiring.one(sql, rs -> {
+			});
+			assertThat(shortLived.stats().hits(), is(1L));
+			Thread.sleep(100);
+			expiring.one(sql, rs -> {
+			});
+			assertThat(shortLived.stats().misses(), is(2L));
+			assertThat(shortLived.stats().evictions(), is(1L));
+		} finally {
+			expiring.close();
+		}
+	}
+
+	static final CountDownLatch GATE = new CountDownLatch(1);
+
+	/**
+	 * Called by the database to hold a query until the gate opens
+	 */
+	public static int gate() throws InterruptedException {
+		GATE.await();
+		return 1;
+	}
+
+	private static String gatedName(Db.Connection conn) throws SQLException {
+		String[] wrap = { null };
+		conn.one("select name from users where id = ? and gate() = 1", rs -> {
+			wrap[0] = rs.getString(1);
+		}, 1);
+		return wrap[0];
+	}
+
+	@Test
+	public void testShouldCoalesceConcurrentMisses() throws Exception {
+		conn.run("create alias gate for \"" + DbQueryCacheTest.class.getName() + ".gate\"");
+		Db.Connection other = cache.wrap(Db.connectTo("jdbc:h2:mem:cache")
+				.with(new org.h2.Driver()));
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> first = executor.submit(() -> gatedName(conn));
+			while (cache.stats().misses() == 0) {
+				Thread.sleep(1);
+			}
+			Future<String> second = executor.submit(() -> gatedName(other));
+			// Second caller finds the load in flight and counts as a hit right away
+			while (cache.stats().hits() == 0) {
+				Thread.sleep(1);
+			}
+			GATE.countDown();
+			assertThat(first.get(1, TimeUnit.SECONDS), is("Dude"));
+			assertThat(second.get(1, TimeUnit.SECONDS), is("Dude"));
+			assertThat(cache.stats().misses(), is(1L));
+			assertThat(cache.stats().hits(), is(1L));
+		} finally {
+			GATE.countDown();
+			executor.shutdownNow();
+			other.close();
+		}
+	}
+}
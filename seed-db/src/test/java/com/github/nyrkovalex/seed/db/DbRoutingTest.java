@@ -0,0 +1,126 @@
+package com.github.nyrkovalex.seed.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DbRoutingTest {
+
+	List<Db.Connection> direct = new ArrayList<>();
+	Db.Connection conn;
+
+	@Before
+	public void createDbs() throws Exception {
+		for (String name : new String[] { "primary", "replica1", "replica2" }) {
+			Db.Connection c = Db.connectTo("jdbc:h2:mem:" + name).with(new org.h2.Driver());
+			c.run("create table origin (name varchar)");
+			c.run("insert into origin (name) values (?)", name);
+			direct.add(c);
+		}
+	}
+
+	@After
+	public void destroyDbs() throws Exception {
+		if (conn != null) {
+			conn.close();
+		}
+		for (Db.Connection c : direct) {
+			c.close();
+		}
+	}
+
+	private String origin() throws SQLException {
+		return conn.list("select name from origin", row -> row.getString("name")).get(0);
+	}
+
+	@Test
+	public void testShouldSpreadReadsAmongReplicas() throws Exception {
+		conn = Db.connectTo("jdbc:h2:mem:primary")
+				.withReplicas("jdbc:h2:mem:replica1", "jdbc:h2:mem:replica2")
+				.with(new org.h2.Driver());
+		List<String> origins = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			origins.add(origin());
+		}
+		assertThat(origins, hasItems("replica1", "replica2"));
+		assertThat(origins.contains("primary"), is(false));
+	}
+
+	@Test
+	public void testShouldSendWritesAndTransactionsToPrimary() throws Exception {
+		conn = Db.connectTo("jdbc:h2:mem:primary")
+				.withReplicas("jdbc:h2:mem:replica1")
+				.balancing(Db.Balancing.LEAST_OUTSTANDING)
+				.with(new org.h2.Driver());
+		conn.run("update origin set name = ?", "written");
+		String[] seen = { null };
+		conn.transaction(t -> {
+			t.one("select name from origin", rs -> seen[0] = rs.getString(1));
+			return true;
+		});
+		assertThat(seen[0], is("written"));
+		assertThat(origin(), is("replica1"));
+	}
+
+	@Test
+	public void testShouldEjectUnavailableReplica() throws Exception {
+		conn = Db.connectTo("jdbc:h2:mem:primary")
+				.withReplicas("jdbc:h2:mem:missing;IFEXISTS=TRUE", "jdbc:h2:mem:replica1")
+				.with(new org.h2.Driver());
+		for (int i = 0; i < 4; i++) {
+			assertThat(origin(), is("replica1"));
+		}
+	}
+
+	@Test
+	public void testShouldFallBackToPrimaryWithoutReplicas() throws Exception {
+		conn = Db.connectTo("jdbc:h2:mem:primary")
+				.withReplicas("jdbc:h2:mem:missing;IFEXISTS=TRUE")
+				.with(new org.h2.Driver());
+		assertThat(origin(), is("primary"));
+	}
+
+	@Test
+	public void testShouldNotEjectReplicaWithBusyPool() throws Exception {
+		Db.Pool primary = Db.connectTo("jdbc:h2:mem:primary").pooled().with(new org.h2.Driver());
+		Db.Pool replica = Db.connectTo("jdbc:h2:mem:replica1")
+				.pooled()
+				.maxSize(1)
+				.borrowTimeout(Duration.ofMillis(50))
+				.with(new org.h2.Driver());
+		conn = new RoutingConnection(primary, Collections.singletonList(replica),
+				Db.Balancing.ROUND_ROBIN, TimeUnit.MINUTES.toNanos(1));
+		try (Db.Connection busy = replica.connection()) {
+			assertThat(origin(), is("primary"));
+		}
+		assertThat(origin(), is("replica1"));
+	}
+
+	// Default pool borrow timeout would hold the read for half a minute
+	@Test(timeout = 10_000)
+	public void testShouldReadFromPrimaryWhileReplicaIsBusy() throws Exception {
+		conn = Db.connectTo("jdbc:h2:mem:primary")
+				.withReplicas("jdbc:h2:mem:replica1")
+				.poolSize(1)
+				.borrowTimeout(Duration.ofMillis(50))
+				.with(new org.h2.Driver());
+		// Open stream holds the only replica connection
+		try (Stream<String> busy = conn.stream("select name from origin",
+				row -> row.getString("name"))) {
+			assertThat(origin(), is("primary"));
+		}
+		assertThat(origin(), is("replica1"));
+	}
+}
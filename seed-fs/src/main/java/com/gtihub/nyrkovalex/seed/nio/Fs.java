@@ -6,11 +6,13 @@ import java.io.IOException;
 import java.nio.file.CopyOption;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
-import java.util.Iterator;
 
 public class Fs {
 	private static final Fs INSTANCE = new Fs();
@@ -35,21 +37,46 @@ public class Fs {
 		return Files.copy(source, target, options);
 	}
 
+	/**
+	 * Creates a parallel copy of a directory tree that goes on after failures
+	 *
+	 * @param source directory to copy
+	 * @param target directory to copy to, created if missing, must not be inside source
+	 * @return copy to configure and run
+	 */
+	public TreeCopy copyTree(Path source, Path target) {
+		return new TreeCopy(source, target);
+	}
+
 	public void delete(Path path) throws IOException {
 		Files.delete(path);
 	}
 
+	/**
+	 * Deletes a directory with everything in it using all available processors, symbolic links
+	 * are deleted rather than followed. A link to a directory given as path is deleted itself,
+	 * what it points to is left alone.
+	 *
+	 * @param path directory to delete
+	 * @throws NoSuchFileException if there is no such directory
+	 * @throws NotDirectoryException if path is not a directory
+	 * @throws IOException first failure, other ones are attached as suppressed
+	 */
 	public void deleteWithContents(Path path) throws IOException {
-		Iterator<Path> iter = Files.list(path).iterator();
-		while (iter.hasNext()) {
-			Path next = iter.next();
-			if (isDirectory(next)) {
-				deleteWithContents(next);
-			} else {
-				delete(next);
-			}
+		if (!Files.readAttributes(path, BasicFileAttributes.class).isDirectory()) {
+			throw new NotDirectoryException(path.toString());
 		}
-		delete(path);
+		deleteTree(path).runOrThrow();
+	}
+
+	/**
+	 * Creates a parallel delete of a directory tree that goes on after failures
+	 *
+	 * @param root directory to delete
+	 * @return delete to configure and run
+	 */
+	public TreeDelete deleteTree(Path root) {
+		return new TreeDelete(root);
 	}
 
 	public boolean isDirectory(Path path, LinkOption... options) {
@@ -68,6 +95,50 @@ public class Fs {
 		return Files.newBufferedReader(path);
 	}
 
+	/**
+	 * Maps a file into memory split into chunks of about 8 MiB that end at line breaks
+	 *
+	 * @param path file to map
+	 * @return mapped file to stream lines or raw slices of
+	 * @throws IOException if file cannot be mapped
+	 */
+	public MappedLines mapLines(Path path) throws IOException {
+		return MappedLines.map(path, MappedLines.DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Maps a file into memory split into chunks that end at line breaks
+	 *
+	 * @param path file to map
+	 * @param chunkSize chunk size in bytes, chunks are extended to the next line break
+	 * @return mapped file to stream lines or raw slices of
+	 * @throws IOException if file cannot be mapped
+	 */
+	public MappedLines mapLines(Path path, int chunkSize) throws IOException {
+		return MappedLines.map(path, chunkSize);
+	}
+
+	/**
+	 * Creates a watcher of a directory tree delivering debounced change sets, it has to be
+	 * started and closed once no longer needed
+	 *
+	 * @param root directory to watch
+	 * @return watcher to configure and start
+	 */
+	public TreeWatcher watch(Path root) {
+		return new TreeWatcher(root);
+	}
+
+	/**
+	 * Creates a parallel SHA-256 digest of a directory tree with Merkle hashes of directories
+	 *
+	 * @param root directory to digest
+	 * @return digest to configure and run
+	 */
+	public TreeDigest digestTree(Path root) {
+		return new TreeDigest(root);
+	}
+
 	public boolean deleteIfExists(Path path) throws IOException {
 		return Files.deleteIfExists(path);
 	}
@@ -0,0 +1,167 @@
+package com.gtihub.nyrkovalex.seed.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>
+ * File mapped into memory as chunks that end at line breaks, so every line is within a single
+ * chunk and chunks can be scanned independently. Streams are sequential, calling
+ * {@link Stream#parallel()} on them spreads chunks across threads. Nothing is copied onto the
+ * heap unless lines are decoded.
+ * </p>
+ * <p>
+ * Lines are split at <code>\n</code> with a preceding <code>\r</code> dropped, so charset of the
+ * file must encode those as single bytes like UTF-8 and ISO-8859 ones do. File should not change
+ * while mapped.
+ * </p>
+ */
+public class MappedLines {
+
+	static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+	private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+	private static final long REGION_SIZE = 1024 * 1024 * 1024;
+
+	private final List<ByteBuffer> chunks;
+	private final long size;
+
+	private MappedLines(List<ByteBuffer> chunks, long size) {
+		this.chunks = chunks;
+		this.size = size;
+	}
+
+	static MappedLines map(Path path, int chunkSize) throws IOException {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive");
+		}
+		// Mappings stay valid once channel is closed
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			List<ByteBuffer> chunks = new ArrayList<>((int) Math.min(size / chunkSize + 1, 1024));
+			ByteBuffer region = null;
+			long regionStart = 0;
+			long start = 0;
+			while (start < size) {
+				long end = lineEnd(channel, Math.min(start + chunkSize, size), size);
+				if (end - start > Integer.MAX_VALUE) {
+					throw new IOException(path + " has a line longer than 2 GiB at " + start);
+				}
+				// Chunks are carved out of large regions, every mapping counts against OS limits
+				if (region == null || end - regionStart > region.capacity()) {
+					regionStart = start;
+					region = channel.map(FileChannel.MapMode.READ_ONLY, start,
+							Math.min(size - start, Math.max(REGION_SIZE, end - start)));
+				}
+				ByteBuffer chunk = region.duplicate();
+				chunk.position((int) (start - regionStart)).limit((int) (end - regionStart));
+				chunks.add(chunk.slice());
+				start = end;
+			}
+			return new MappedLines(Collections.unmodifiableList(chunks), size);
+		}
+	}
+
+	/**
+	 * @return position right after first line break at or after given one, or file end
+	 */
+	private static long lineEnd(FileChannel channel, long position, long size) throws IOException {
+		if (position >= size) {
+			return size;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+		// Chunk may already end with a line break
+		long scanned = position - 1;
+		while (scanned < size) {
+			buffer.clear();
+			int read = channel.read(buffer, scanned);
+			if (read < 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return scanned + i + 1;
+				}
+			}
+			scanned += read;
+		}
+		return size;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return read-only chunks of the file, each ending with a line break except maybe the last
+	 */
+	public Stream<ByteBuffer> chunks() {
+		return chunks.stream().map(ByteBuffer::asReadOnlyBuffer);
+	}
+
+	/**
+	 * @return read-only slices of the file, one per line, without line breaks
+	 */
+	public Stream<ByteBuffer> slices() {
+		return chunks.stream().flatMap(chunk ->
+				StreamSupport.stream(new LineSpliterator(chunk.asReadOnlyBuffer()), false));
+	}
+
+	/**
+	 * @return UTF-8 lines of the file, each decoded only when the stream gets to it
+	 */
+	public Stream<String> lines() {
+		return lines(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param charset charset of the file
+	 * @return lines of the file, each decoded only when the stream gets to it
+	 */
+	public Stream<String> lines(Charset charset) {
+		return slices().map(slice -> charset.decode(slice).toString());
+	}
+
+	private static final class LineSpliterator extends Spliterators.AbstractSpliterator<ByteBuffer> {
+		private final ByteBuffer chunk;
+
+		LineSpliterator(ByteBuffer chunk) {
+			super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+			this.chunk = chunk;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super ByteBuffer> action) {
+			int start = chunk.position();
+			int limit = chunk.limit();
+			if (start >= limit) {
+				return false;
+			}
+			int end = start;
+			while (end < limit && chunk.get(end) != '\n') {
+				end++;
+			}
+			chunk.position(Math.min(end + 1, limit));
+			// Carriage return is part of a line break only when followed by a line feed
+			if (end < limit && end > start && chunk.get(end - 1) == '\r') {
+				end--;
+			}
+			ByteBuffer line = chunk.duplicate();
+			line.position(start).limit(end);
+			action.accept(line.slice());
+			return true;
+		}
+	}
+}
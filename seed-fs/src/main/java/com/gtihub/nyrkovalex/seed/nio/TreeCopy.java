@@ -0,0 +1,345 @@
+package com.gtihub.nyrkovalex.seed.nio;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Copies a directory tree. The tree is walked on the calling thread, which creates directories
+ * and links, while files are copied by a bounded pool of threads. Files of
+ * <code>zeroCopyThreshold</code> bytes and more are copied with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} so the kernel
+ * moves the data without it passing through the heap, smaller ones with {@link Files#copy}.
+ * </p>
+ * <p>
+ * Modification times and POSIX permissions are preserved, directory ones once their contents are
+ * in place. Symbolic links are copied as links. Links already in the target are replaced rather
+ * than written through, a link in place of a directory fails it. Failures are recorded and the
+ * rest of the tree is still copied.
+ * </p>
+ */
+public class TreeCopy {
+
+	static final long DEFAULT_ZERO_COPY_THRESHOLD = 64 * 1024;
+	private static final int QUEUED_PER_THREAD = 64;
+	private static final AtomicInteger RUN_COUNT = new AtomicInteger();
+
+	private final Path source;
+	private final Path target;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private boolean skipUnchanged;
+	private long zeroCopyThreshold = DEFAULT_ZERO_COPY_THRESHOLD;
+
+	TreeCopy(Path source, Path target) {
+		this.source = Objects.requireNonNull(source);
+		this.target = Objects.requireNonNull(target);
+		// Walk would run into copies it makes and never end
+		if (target.toAbsolutePath().normalize().startsWith(source.toAbsolutePath().normalize())) {
+			throw new IllegalArgumentException("Cannot copy " + source + " into itself");
+		}
+	}
+
+	/**
+	 * @param parallelism number of files copied at once
+	 * @return this copy
+	 */
+	public TreeCopy parallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Leaves target files alone if they have the same size and modification time as source ones
+	 *
+	 * @return this copy
+	 */
+	public TreeCopy skipUnchanged() {
+		this.skipUnchanged = true;
+		return this;
+	}
+
+	/**
+	 * @param zeroCopyThreshold size in bytes from which files are copied channel to channel
+	 * @return this copy
+	 */
+	public TreeCopy zeroCopyThreshold(long zeroCopyThreshold) {
+		if (zeroCopyThreshold < 0) {
+			throw new IllegalArgumentException("Zero copy threshold must not be negative");
+		}
+		this.zeroCopyThreshold = zeroCopyThreshold;
+		return this;
+	}
+
+	/**
+	 * Copies the tree, failures do not stop it
+	 *
+	 * @return what was copied and what was not
+	 */
+	public Result run() {
+		Run run = new Run();
+		int runNumber = RUN_COUNT.incrementAndGet();
+		AtomicInteger threadCount = new AtomicInteger();
+		// Walker runs copies itself once the queue is full, so it never gets far ahead
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 0,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(parallelism * QUEUED_PER_THREAD),
+				r -> {
+					Thread thread = new Thread(r,
+							"seed-fs-copy-" + runNumber + "-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		List<Path[]> directories = new ArrayList<>();
+		try {
+			Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+					Path copy = target.resolve(source.relativize(dir).toString());
+					try {
+						Files.createDirectories(copy);
+						// Link planted in target would take the copy outside of it
+						if (!dir.equals(source) && !Files.isDirectory(copy, LinkOption.NOFOLLOW_LINKS)) {
+							throw new FileAlreadyExistsException(copy.toString(), null,
+									"Not a directory");
+						}
+					} catch (IOException ex) {
+						run.failures.put(dir, ex);
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					directories.add(new Path[] { dir, copy });
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					Path copy = target.resolve(source.relativize(file).toString());
+					if (attrs.isSymbolicLink()) {
+						run.link(file, copy);
+					} else if (attrs.isRegularFile()) {
+						executor.execute(() -> run.file(file, attrs, copy));
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException ex) {
+					run.failures.put(file, ex);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException ex) {
+			run.failures.put(source, ex);
+		} finally {
+			executor.shutdown();
+			awaitQuietly(executor);
+		}
+		// Children first, setting their times touches parent
+		for (int i = directories.size() - 1; i >= 0; i--) {
+			Path[] dir = directories.get(i);
+			try {
+				copyAttributes(dir[0], Files.readAttributes(dir[0], BasicFileAttributes.class),
+						dir[1]);
+			} catch (IOException ex) {
+				run.failures.put(dir[0], ex);
+			}
+		}
+		return new Result(run.copied.get(), run.skipped.get(), run.bytes.get(), run.failures);
+	}
+
+	/**
+	 * Copies the tree
+	 *
+	 * @throws IOException first failure, other ones are attached as suppressed
+	 */
+	public void runOrThrow() throws IOException {
+		IOException err = null;
+		for (IOException cause : run().failures().values()) {
+			if (err == null) {
+				err = cause;
+			} else {
+				err.addSuppressed(cause);
+			}
+		}
+		if (err != null) {
+			throw err;
+		}
+	}
+
+	/**
+	 * Outcome of a copy
+	 */
+	public static class Result {
+		private final long copied;
+		private final long skipped;
+		private final long bytes;
+		private final Map<Path, IOException> failures;
+
+		private Result(long copied, long skipped, long bytes, Map<Path, IOException> failures) {
+			this.copied = copied;
+			this.skipped = skipped;
+			this.bytes = bytes;
+			this.failures = Collections.unmodifiableMap(failures);
+		}
+
+		/**
+		 * @return number of files and links copied
+		 */
+		public long copied() {
+			return copied;
+		}
+
+		/**
+		 * @return number of files left alone as unchanged
+		 */
+		public long skipped() {
+			return skipped;
+		}
+
+		/**
+		 * @return bytes of file content copied
+		 */
+		public long bytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return source paths that could not be copied with reasons
+		 */
+		public Map<Path, IOException> failures() {
+			return failures;
+		}
+
+		public boolean succeeded() {
+			return failures.isEmpty();
+		}
+	}
+
+	private final class Run {
+		final AtomicLong copied = new AtomicLong();
+		final AtomicLong skipped = new AtomicLong();
+		final AtomicLong bytes = new AtomicLong();
+		final Map<Path, IOException> failures = new ConcurrentHashMap<>();
+
+		void file(Path file, BasicFileAttributes attrs, Path copy) {
+			try {
+				if (skipUnchanged && unchanged(attrs, copy)) {
+					skipped.incrementAndGet();
+					return;
+				}
+				clear(copy);
+				if (attrs.size() >= zeroCopyThreshold) {
+					transfer(file, attrs.size(), copy);
+				} else {
+					Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+				}
+				copyAttributes(file, attrs, copy);
+				copied.incrementAndGet();
+				bytes.addAndGet(attrs.size());
+			} catch (IOException | RuntimeException ex) {
+				failures.put(file, ex instanceof IOException ? (IOException) ex : new IOException(ex));
+			}
+		}
+
+		void link(Path link, Path copy) {
+			try {
+				Path linkTarget = Files.readSymbolicLink(link);
+				try {
+					Files.createSymbolicLink(copy, linkTarget);
+				} catch (FileAlreadyExistsException ex) {
+					Files.delete(copy);
+					Files.createSymbolicLink(copy, linkTarget);
+				}
+				copied.incrementAndGet();
+			} catch (IOException ex) {
+				failures.put(link, ex);
+			}
+		}
+	}
+
+	private static boolean unchanged(BasicFileAttributes attrs, Path copy) {
+		try {
+			BasicFileAttributes existing = Files.readAttributes(copy, BasicFileAttributes.class,
+					LinkOption.NOFOLLOW_LINKS);
+			return existing.isRegularFile() && existing.size() == attrs.size()
+					&& existing.lastModifiedTime().toMillis() == attrs.lastModifiedTime().toMillis();
+		} catch (IOException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Deletes whatever but a regular file is in place of a copy, so it is not written through
+	 */
+	private static void clear(Path copy) throws IOException {
+		try {
+			BasicFileAttributes existing = Files.readAttributes(copy, BasicFileAttributes.class,
+					LinkOption.NOFOLLOW_LINKS);
+			if (!existing.isRegularFile()) {
+				Files.delete(copy);
+			}
+		} catch (NoSuchFileException ex) {
+			// Nothing in the way
+		}
+	}
+
+	private static void transfer(Path file, long size, Path copy) throws IOException {
+		try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(copy, StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+						LinkOption.NOFOLLOW_LINKS)) {
+			long position = 0;
+			while (position < size) {
+				long sent = in.transferTo(position, size - position, out);
+				if (sent <= 0) {
+					throw new IOException(file + " got shorter while being copied");
+				}
+				position += sent;
+			}
+		}
+	}
+
+	private static void copyAttributes(Path from, BasicFileAttributes attrs, Path to)
+			throws IOException {
+		PosixFileAttributeView posix = Files.getFileAttributeView(to, PosixFileAttributeView.class,
+				LinkOption.NOFOLLOW_LINKS);
+		if (posix != null && Files.getFileAttributeView(from, PosixFileAttributeView.class) != null) {
+			posix.setPermissions(Files.readAttributes(from, PosixFileAttributes.class).permissions());
+		}
+		Files.getFileAttributeView(to, BasicFileAttributeView.class, LinkOption.NOFOLLOW_LINKS)
+				.setTimes(attrs.lastModifiedTime(), attrs.lastAccessTime(), null);
+	}
+
+	private static void awaitQuietly(ThreadPoolExecutor executor) {
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,290 @@
+package com.gtihub.nyrkovalex.seed.nio;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Deletes a directory tree on a fork/join pool: every subdirectory is a task of its own and
+ * files of large directories are deleted in batches, so idle threads steal work from busy ones
+ * however the tree is shaped. Every directory stream is closed as soon as it is listed.
+ * </p>
+ * <p>
+ * Symbolic links are deleted, never followed, including the root. A failure to delete something
+ * is recorded and the rest of the tree is still deleted, only directories that kept some of
+ * their contents are left in place.
+ * </p>
+ */
+public class TreeDelete {
+
+	private static final int BATCH_SIZE = 512;
+	private static final long DEFAULT_PROGRESS_STEP = 10_000;
+
+	/**
+	 * Receives progress of a delete. Methods are called on pool threads.
+	 */
+	public interface Listener {
+		/**
+		 * @param deleted number of files and directories deleted so far
+		 */
+		default void progress(long deleted) {
+		}
+
+		default void failed(Path path, IOException error) {
+		}
+	}
+
+	private static final Listener NO_LISTENER = new Listener() {
+	};
+
+	private final Path root;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private Listener listener = NO_LISTENER;
+	private long progressStep = DEFAULT_PROGRESS_STEP;
+
+	TreeDelete(Path root) {
+		this.root = Objects.requireNonNull(root);
+	}
+
+	/**
+	 * @param parallelism number of threads deleting at once
+	 * @return this delete
+	 */
+	public TreeDelete parallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * @param listener listener to report to
+	 * @param step number of deleted entries between progress reports
+	 * @return this delete
+	 */
+	public TreeDelete listener(Listener listener, long step) {
+		if (step < 1) {
+			throw new IllegalArgumentException("Progress step must be positive");
+		}
+		this.listener = Objects.requireNonNull(listener);
+		this.progressStep = step;
+		return this;
+	}
+
+	/**
+	 * Deletes the tree, failures do not stop it
+	 *
+	 * @return what was deleted and what was not
+	 */
+	public Result run() {
+		Run run = new Run();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new Entry(run, root));
+		} finally {
+			pool.shutdown();
+		}
+		listener.progress(run.deleted.get());
+		return new Result(run.deleted.get(), run.failures);
+	}
+
+	/**
+	 * Deletes the tree
+	 *
+	 * @throws IOException first failure, other ones are attached as suppressed
+	 */
+	public void runOrThrow() throws IOException {
+		Result result = run();
+		IOException err = null;
+		for (IOException cause : result.failures().values()) {
+			if (err == null) {
+				err = cause;
+			} else {
+				err.addSuppressed(cause);
+			}
+		}
+		if (err != null) {
+			throw err;
+		}
+	}
+
+	/**
+	 * Outcome of a delete
+	 */
+	public static class Result {
+		private final long deleted;
+		private final Map<Path, IOException> failures;
+
+		private Result(long deleted, Map<Path, IOException> failures) {
+			this.deleted = deleted;
+			this.failures = Collections.unmodifiableMap(failures);
+		}
+
+		/**
+		 * @return number of files and directories deleted
+		 */
+		public long deleted() {
+			return deleted;
+		}
+
+		/**
+		 * @return paths that could not be deleted or listed with reasons
+		 */
+		public Map<Path, IOException> failures() {
+			return failures;
+		}
+
+		public boolean succeeded() {
+			return failures.isEmpty();
+		}
+	}
+
+	private final class Run {
+		final AtomicLong deleted = new AtomicLong();
+		final Map<Path, IOException> failures = new ConcurrentHashMap<>();
+
+		boolean delete(Path path) {
+			try {
+				Files.delete(path);
+			} catch (NoSuchFileException ex) {
+				// Someone else got it first
+				return true;
+			} catch (IOException ex) {
+				fail(path, ex);
+				return false;
+			}
+			long count = deleted.incrementAndGet();
+			if (count % progressStep == 0) {
+				listener.progress(count);
+			}
+			return true;
+		}
+
+		void fail(Path path, IOException ex) {
+			failures.put(path, ex);
+			listener.failed(path, ex);
+		}
+	}
+
+	/**
+	 * Deletes a path of yet unknown type, directories are emptied first
+	 */
+	private final class Entry extends RecursiveAction {
+		private final Run run;
+		private final Path path;
+		private boolean gone;
+
+		Entry(Run run, Path path) {
+			this.run = run;
+			this.path = path;
+		}
+
+		@Override
+		protected void compute() {
+			BasicFileAttributes attrs;
+			try {
+				attrs = Files.readAttributes(path, BasicFileAttributes.class,
+						LinkOption.NOFOLLOW_LINKS);
+			} catch (NoSuchFileException ex) {
+				gone = true;
+				return;
+			} catch (IOException ex) {
+				run.fail(path, ex);
+				return;
+			}
+			if (!attrs.isDirectory() || emptied()) {
+				gone = run.delete(path);
+			}
+		}
+
+		/**
+		 * @return true if nothing is left in the directory
+		 */
+		private boolean emptied() {
+			List<Batch> tasks = new ArrayList<>();
+			List<Path> batch = new ArrayList<>(BATCH_SIZE);
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+				for (Path entry : entries) {
+					batch.add(entry);
+					if (batch.size() == BATCH_SIZE) {
+						Batch task = new Batch(run, batch);
+						task.fork();
+						tasks.add(task);
+						batch = new ArrayList<>(BATCH_SIZE);
+					}
+				}
+			} catch (IOException | DirectoryIteratorException ex) {
+				// Iteration failures come unchecked, the rest of the tree must still go
+				run.fail(path, ex instanceof IOException
+						? (IOException) ex : ((DirectoryIteratorException) ex).getCause());
+				joinAll(tasks);
+				return false;
+			}
+			// Smaller directories are processed here, no need to hand them over
+			boolean empty = new Batch(run, batch).process();
+			return joinAll(tasks) && empty;
+		}
+
+		private boolean joinAll(List<Batch> tasks) {
+			boolean empty = true;
+			for (Batch task : tasks) {
+				task.join();
+				empty &= task.empty;
+			}
+			return empty;
+		}
+	}
+
+	/**
+	 * Deletes entries of one directory, subdirectories are forked
+	 */
+	private final class Batch extends RecursiveAction {
+		private final Run run;
+		private final List<Path> paths;
+		private boolean empty;
+
+		Batch(Run run, List<Path> paths) {
+			this.run = run;
+			this.paths = paths;
+		}
+
+		@Override
+		protected void compute() {
+			empty = process();
+		}
+
+		boolean process() {
+			List<Entry> subdirectories = new ArrayList<>();
+			boolean deleted = true;
+			for (Path path : paths) {
+				if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+					subdirectories.add(new Entry(run, path));
+				} else {
+					deleted &= run.delete(path);
+				}
+			}
+			ForkJoinTask.invokeAll(subdirectories);
+			for (Entry subdirectory : subdirectories) {
+				deleted &= subdirectory.gone;
+			}
+			return deleted;
+		}
+	}
+}
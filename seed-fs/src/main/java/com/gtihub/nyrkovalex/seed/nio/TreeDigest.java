@@ -0,0 +1,372 @@
+package com.gtihub.nyrkovalex.seed.nio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * Takes SHA-256 digests of every file in a directory tree, hashing files in parallel. With an
+ * index file digests are kept between runs along with file sizes and modification times, and
+ * only files where those changed are read again. A file modified no earlier than the index was
+ * written could have changed again within the same clock tick, it is read again too.
+ * </p>
+ * <p>
+ * Every directory also gets a Merkle hash over names, types and hashes of its entries, so two
+ * trees or two states of one tree are compared by their root hashes alone, and a differing
+ * subtree is found by descending through differing directory hashes. Symbolic links are not
+ * followed, they are hashed by their target path and typed apart from files holding the same.
+ * </p>
+ */
+public class TreeDigest {
+
+	private static final int INDEX_MAGIC = 0x53444932;
+	private static final int HASH_BUFFER_SIZE = 64 * 1024;
+	private static final int DIGEST_LENGTH = 32;
+
+	private final Path root;
+	private Path index;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	TreeDigest(Path root) {
+		this.root = Objects.requireNonNull(root);
+	}
+
+	/**
+	 * @param index file to keep digests in between runs, created if missing
+	 * @return this digest
+	 */
+	public TreeDigest index(Path index) {
+		this.index = Objects.requireNonNull(index);
+		return this;
+	}
+
+	/**
+	 * @param parallelism number of files hashed at once
+	 * @return this digest
+	 */
+	public TreeDigest parallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Digests the tree and updates the index
+	 *
+	 * @return digests of files and directories
+	 * @throws IOException if tree cannot be read or index cannot be written, index is left as
+	 * it was then
+	 */
+	public Result run() throws IOException {
+		if (!Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+			throw new NotDirectoryException(root.toString());
+		}
+		Map<String, Entry> known = index == null ? Collections.emptyMap() : load(index);
+		Map<String, List<Path>> directories = new HashMap<>();
+		Set<String> links = new HashSet<>();
+		List<Path> files = new ArrayList<>();
+		Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+				directories.put(key(dir), new ArrayList<>());
+				if (!dir.equals(root)) {
+					directories.get(key(dir.getParent())).add(dir);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				// Sockets, pipes and devices have no content to hash
+				if (!attrs.isRegularFile() && !attrs.isSymbolicLink()) {
+					return FileVisitResult.CONTINUE;
+				}
+				directories.get(key(file.getParent())).add(file);
+				files.add(file);
+				if (attrs.isSymbolicLink()) {
+					links.add(key(file));
+				}
+				attributes.put(file, attrs);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+
+		AtomicInteger hashed = new AtomicInteger();
+		Map<String, Entry> entries = stamp(files, attributes, known, hashed);
+		Map<String, byte[]> hashes = new HashMap<>();
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			hashes.put(entry.getKey(), entry.getValue().digest);
+		}
+		merkle(root, directories, links, hashes);
+		if (index != null) {
+			save(index, entries);
+		}
+		return new Result(hashes, directories.keySet(), hashed.get(), files.size() - hashed.get());
+	}
+
+	private Map<String, Entry> stamp(List<Path> files, Map<Path, BasicFileAttributes> attributes,
+			Map<String, Entry> known, AtomicInteger hashed) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			// Parallel stream runs on the pool it is started from
+			List<Entry> stamped = pool.submit(() -> files.parallelStream().map(file -> {
+				BasicFileAttributes attrs = attributes.get(file);
+				String key = key(file);
+				long modified = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+				Entry entry = known.get(key);
+				if (entry != null && entry.size == attrs.size() && entry.modified == modified
+						&& entry.clean) {
+					return entry;
+				}
+				hashed.incrementAndGet();
+				try {
+					return new Entry(key, attrs.size(), modified, digest(file, attrs), false);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}).collect(Collectors.toList())).get();
+			Map<String, Entry> entries = new TreeMap<>();
+			for (Entry entry : stamped) {
+				entries.put(entry.path, entry);
+			}
+			return entries;
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) ex.getCause()).getCause();
+			}
+			throw new IOException(ex.getCause());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while hashing " + root, ex);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Hashes directory entries bottom up, each entry contributes its type, name and hash
+	 */
+	private byte[] merkle(Path dir, Map<String, List<Path>> directories, Set<String> links,
+			Map<String, byte[]> hashes) {
+		List<Path> children = directories.get(key(dir));
+		children.sort((a, b) -> a.getFileName().toString().compareTo(b.getFileName().toString()));
+		MessageDigest digest = sha256();
+		for (Path child : children) {
+			String childKey = key(child);
+			boolean directory = directories.containsKey(childKey);
+			byte[] hash = directory
+					? merkle(child, directories, links, hashes) : hashes.get(childKey);
+			digest.update((byte) (directory ? 'd' : links.contains(childKey) ? 'l' : 'f'));
+			digest.update(child.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(hash);
+		}
+		byte[] hash = digest.digest();
+		hashes.put(key(dir), hash);
+		return hash;
+	}
+
+	/**
+	 * @return path relative to root with forward slashes, empty for root itself
+	 */
+	private String key(Path path) {
+		String relative = root.relativize(path).toString();
+		return path.getFileSystem().getSeparator().equals("/")
+				? relative : relative.replace(path.getFileSystem().getSeparator(), "/");
+	}
+
+	private static byte[] digest(Path file, BasicFileAttributes attrs) throws IOException {
+		MessageDigest digest = sha256();
+		if (attrs.isSymbolicLink()) {
+			digest.update(Files.readSymbolicLink(file).toString().getBytes(StandardCharsets.UTF_8));
+			return digest.digest();
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+		return digest.digest();
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Index is binary: magic, entry count, then path, size, modification time in nanoseconds and
+	 * digest of every file. Missing or damaged index only costs a full rehash.
+	 */
+	private static Map<String, Entry> load(Path index) {
+		Map<String, Entry> entries = new HashMap<>();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(index)))) {
+			// Index time comes from the same clock as file times
+			long written = Files.getLastModifiedTime(index).to(TimeUnit.NANOSECONDS);
+			if (in.readInt() != INDEX_MAGIC) {
+				return entries;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String path = in.readUTF();
+				long size = in.readLong();
+				long modified = in.readLong();
+				byte[] digest = new byte[DIGEST_LENGTH];
+				in.readFully(digest);
+				entries.put(path, new Entry(path, size, modified, digest, modified < written));
+			}
+			return entries;
+		} catch (NoSuchFileException ex) {
+			return entries;
+		} catch (IOException ex) {
+			return Collections.emptyMap();
+		}
+	}
+
+	private static void save(Path index, Map<String, Entry> entries) throws IOException {
+		Path tmp = index.resolveSibling(index.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(tmp)))) {
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(entries.size());
+			for (Entry entry : entries.values()) {
+				out.writeUTF(entry.path);
+				out.writeLong(entry.size);
+				out.writeLong(entry.modified);
+				out.write(entry.digest);
+			}
+		}
+		Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Digests of a tree
+	 */
+	public static class Result {
+		private final Map<String, byte[]> hashes;
+		private final Map<String, String> files;
+		private final int hashed;
+		private final int reused;
+
+		private Result(Map<String, byte[]> hashes, Set<String> directories, int hashed,
+				int reused) {
+			this.hashes = hashes;
+			Map<String, String> files = new TreeMap<>();
+			for (Map.Entry<String, byte[]> entry : hashes.entrySet()) {
+				if (!directories.contains(entry.getKey())) {
+					files.put(entry.getKey(), hex(entry.getValue()));
+				}
+			}
+			this.files = Collections.unmodifiableMap(files);
+			this.hashed = hashed;
+			this.reused = reused;
+		}
+
+		/**
+		 * @return Merkle hash of the whole tree
+		 */
+		public String hash() {
+			return hex(hashes.get(""));
+		}
+
+		/**
+		 * @param relativePath file or directory relative to root, separated with forward slashes
+		 * @return its digest or Merkle hash, empty if there is no such path in the tree
+		 */
+		public Optional<String> hash(String relativePath) {
+			return Optional.ofNullable(hashes.get(relativePath)).map(Result::hex);
+		}
+
+		/**
+		 * @return digests of files by path relative to root, separated with forward slashes
+		 */
+		public Map<String, String> files() {
+			return files;
+		}
+
+		/**
+		 * @return number of files read this run
+		 */
+		public int hashed() {
+			return hashed;
+		}
+
+		/**
+		 * @return number of files whose digests were taken from the index
+		 */
+		public int reused() {
+			return reused;
+		}
+
+		private static String hex(byte[] bytes) {
+			StringBuilder hex = new StringBuilder(bytes.length * 2);
+			for (byte b : bytes) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+						.append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		}
+	}
+
+	private static final class Entry {
+		final String path;
+		final long size;
+		final long modified;
+		final byte[] digest;
+		// Modified before index was written, a later change would show in modification time
+		final boolean clean;
+
+		Entry(String path, long size, long modified, byte[] digest, boolean clean) {
+			this.path = path;
+			this.size = size;
+			this.modified = modified;
+			this.digest = digest;
+			this.clean = clean;
+		}
+	}
+}
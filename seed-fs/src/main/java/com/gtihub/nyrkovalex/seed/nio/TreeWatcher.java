@@ -0,0 +1,382 @@
+package com.gtihub.nyrkovalex.seed.nio;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Watches a directory tree with a single {@link WatchService} and a single thread however many
+ * directories it has. Directories created later are registered as they appear and files already
+ * in them are reported as created.
+ * </p>
+ * <p>
+ * Events are coalesced per path and delivered as one change set once the tree has been quiet for
+ * the debounce window, or once ten windows have passed under constant churn. When the service
+ * overflows, the directory it happened in is rescanned and compared with what is known of it.
+ * </p>
+ * <p>
+ * Listener is called on the watching thread, exceptions it throws are ignored.
+ * </p>
+ */
+public class TreeWatcher implements AutoCloseable {
+
+	static final Duration DEFAULT_DEBOUNCE = Duration.ofMillis(200);
+	private static final int MAX_DELAY_WINDOWS = 10;
+	private static final long DIRECTORY = Long.MIN_VALUE;
+	private static final AtomicInteger WATCHER_COUNT = new AtomicInteger();
+
+	public enum Change {
+		CREATED, MODIFIED, DELETED
+	}
+
+	/**
+	 * Changes coalesced over a debounce window
+	 */
+	public static class ChangeSet {
+		private final Map<Path, Change> changes;
+		private final boolean rescanned;
+
+		private ChangeSet(Map<Path, Change> changes, boolean rescanned) {
+			this.changes = Collections.unmodifiableMap(changes);
+			this.rescanned = rescanned;
+		}
+
+		/**
+		 * @return net change of every path in the order first seen, paths created and deleted
+		 * within the window are left out
+		 */
+		public Map<Path, Change> changes() {
+			return changes;
+		}
+
+		/**
+		 * @return true if some of the changes were found by rescanning after an overflow
+		 */
+		public boolean rescanned() {
+			return rescanned;
+		}
+	}
+
+	private final Path root;
+	private long debounceNanos = DEFAULT_DEBOUNCE.toNanos();
+	private Consumer<ChangeSet> listener = changes -> {
+	};
+	private WatchService service;
+	private Thread thread;
+
+	// Touched by the watching thread only once started
+	private final Map<WatchKey, Path> directories = new HashMap<>();
+	private final Map<Path, Map<Path, Long>> listings = new HashMap<>();
+	private Map<Path, Change> pending = new LinkedHashMap<>();
+	private boolean rescanned;
+	private long firstEventAt;
+	private long lastEventAt;
+
+	TreeWatcher(Path root) {
+		this.root = Objects.requireNonNull(root);
+	}
+
+	/**
+	 * @param window quiet time to wait for before changes are delivered
+	 * @return this watcher
+	 */
+	public TreeWatcher debounce(Duration window) {
+		if (window.isNegative()) {
+			throw new IllegalArgumentException("Debounce window must not be negative");
+		}
+		this.debounceNanos = window.toNanos();
+		return this;
+	}
+
+	public TreeWatcher listener(Consumer<ChangeSet> listener) {
+		this.listener = Objects.requireNonNull(listener);
+		return this;
+	}
+
+	/**
+	 * Registers the tree and starts watching it
+	 *
+	 * @return this watcher
+	 * @throws IOException if tree cannot be registered
+	 */
+	public TreeWatcher start() throws IOException {
+		if (service != null) {
+			throw new IllegalStateException("Watcher is already started");
+		}
+		service = root.getFileSystem().newWatchService();
+		try {
+			register(root, false);
+		} catch (IOException ex) {
+			service.close();
+			throw ex;
+		}
+		thread = new Thread(this::watch, "seed-fs-watch-" + WATCHER_COUNT.incrementAndGet());
+		thread.setDaemon(true);
+		thread.start();
+		return this;
+	}
+
+	/**
+	 * Stops watching, changes not delivered yet are dropped
+	 */
+	@Override
+	public void close() throws IOException {
+		if (service == null) {
+			return;
+		}
+		service.close();
+		if (Thread.currentThread() != thread) {
+			try {
+				thread.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				WatchKey key;
+				if (pending.isEmpty()) {
+					key = service.take();
+				} else {
+					long deadline = Math.min(lastEventAt + debounceNanos,
+							firstEventAt + debounceNanos * MAX_DELAY_WINDOWS);
+					key = service.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				}
+				while (key != null) {
+					process(key);
+					key = service.poll();
+				}
+				long now = System.nanoTime();
+				if (!pending.isEmpty() && (now - lastEventAt >= debounceNanos
+						|| now - firstEventAt >= debounceNanos * MAX_DELAY_WINDOWS)) {
+					deliver();
+				}
+			}
+		} catch (ClosedWatchServiceException | InterruptedException ex) {
+			// Closed
+		}
+	}
+
+	private void process(WatchKey key) {
+		Path dir = directories.get(key);
+		if (dir != null) {
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					rescanned = true;
+					rescan(dir);
+				} else {
+					changed(dir, dir.resolve((Path) event.context()), event.kind());
+				}
+			}
+		}
+		if (!key.reset()) {
+			directories.remove(key);
+		}
+	}
+
+	private void changed(Path dir, Path path, WatchEvent.Kind<?> kind) {
+		Map<Path, Long> listing = listings.computeIfAbsent(dir, d -> new HashMap<>());
+		if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+			forget(path, listing.remove(path));
+			record(path, Change.DELETED);
+			return;
+		}
+		BasicFileAttributes attrs = attributes(path);
+		if (attrs == null) {
+			// Gone already, its delete event is on the way and cancels creation out
+			if (kind == StandardWatchEventKinds.ENTRY_CREATE && !listing.containsKey(path)) {
+				record(path, Change.CREATED);
+			}
+			return;
+		}
+		if (attrs.isDirectory()) {
+			if (kind == StandardWatchEventKinds.ENTRY_CREATE && !listing.containsKey(path)) {
+				listing.put(path, DIRECTORY);
+				record(path, Change.CREATED);
+				registerQuietly(path);
+			}
+			return;
+		}
+		Long known = listing.put(path, attrs.lastModifiedTime().toMillis());
+		record(path, known == null ? Change.CREATED : Change.MODIFIED);
+	}
+
+	/**
+	 * Compares directory with its listing, new subdirectories are registered and walked. Known
+	 * ones are left alone, their own keys still report what happens in them.
+	 */
+	private void rescan(Path dir) {
+		Map<Path, Long> before = listings.getOrDefault(dir, Collections.emptyMap());
+		Map<Path, Long> now = new HashMap<>();
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+			for (Path entry : entries) {
+				BasicFileAttributes attrs = attributes(entry);
+				if (attrs != null) {
+					now.put(entry, attrs.isDirectory()
+							? DIRECTORY : attrs.lastModifiedTime().toMillis());
+				}
+			}
+		} catch (IOException ex) {
+			// Directory is gone or unreadable, everything known in it is gone too
+		}
+		listings.put(dir, now);
+		for (Map.Entry<Path, Long> entry : before.entrySet()) {
+			if (!now.containsKey(entry.getKey())) {
+				forget(entry.getKey(), entry.getValue());
+				record(entry.getKey(), Change.DELETED);
+			}
+		}
+		for (Map.Entry<Path, Long> entry : now.entrySet()) {
+			Path path = entry.getKey();
+			Long known = before.get(path);
+			if (entry.getValue() == DIRECTORY) {
+				if (known == null) {
+					record(path, Change.CREATED);
+					registerQuietly(path);
+				}
+			} else if (known == null) {
+				record(path, Change.CREATED);
+			} else if (!known.equals(entry.getValue())) {
+				record(path, Change.MODIFIED);
+			}
+		}
+	}
+
+	/**
+	 * Drops listings under a deleted directory reporting their contents as deleted
+	 */
+	private void forget(Path path, Long known) {
+		if (known == null || known != DIRECTORY) {
+			return;
+		}
+		Map<Path, Long> listing = listings.remove(path);
+		if (listing == null) {
+			return;
+		}
+		for (Map.Entry<Path, Long> entry : listing.entrySet()) {
+			forget(entry.getKey(), entry.getValue());
+			record(entry.getKey(), Change.DELETED);
+		}
+	}
+
+	private void registerQuietly(Path dir) {
+		try {
+			register(dir, true);
+		} catch (IOException ex) {
+			// Removed before it could be registered, its delete event is on the way
+		}
+	}
+
+	/**
+	 * Registers directory and every one under it, building their listings
+	 */
+	private void register(Path start, boolean report) throws IOException {
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+					throws IOException {
+				WatchKey key = dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+				directories.put(key, dir);
+				listings.put(dir, new HashMap<>());
+				if (!dir.equals(start)) {
+					listings.get(dir.getParent()).put(dir, DIRECTORY);
+					if (report) {
+						record(dir, Change.CREATED);
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				listings.get(file.getParent()).put(file, attrs.lastModifiedTime().toMillis());
+				if (report) {
+					record(file, Change.CREATED);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException ex) throws IOException {
+				if (file.equals(start)) {
+					throw ex;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private void record(Path path, Change change) {
+		long now = System.nanoTime();
+		if (pending.isEmpty()) {
+			firstEventAt = now;
+		}
+		lastEventAt = now;
+		Change merged = merge(pending.get(path), change);
+		if (merged == null) {
+			pending.remove(path);
+		} else {
+			pending.put(path, merged);
+		}
+	}
+
+	/**
+	 * @return net change of two consecutive ones, null if they cancel out
+	 */
+	private static Change merge(Change previous, Change next) {
+		if (previous == null) {
+			return next;
+		}
+		switch (previous) {
+			case CREATED:
+				return next == Change.DELETED ? null : Change.CREATED;
+			case DELETED:
+				return next == Change.CREATED ? Change.MODIFIED : next;
+			default:
+				return next == Change.DELETED ? Change.DELETED : Change.MODIFIED;
+		}
+	}
+
+	private void deliver() {
+		ChangeSet changes = new ChangeSet(pending, rescanned);
+		pending = new LinkedHashMap<>();
+		rescanned = false;
+		try {
+			listener.accept(changes);
+		} catch (RuntimeException ex) {
+			// Listener failure must not stop watching
+		}
+	}
+
+	private static BasicFileAttributes attributes(Path path) {
+		try {
+			return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (IOException ex) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.gtihub.nyrkovalex.seed.nio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MappedLinesTest {
+
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	private Path file(String content) throws Exception {
+		Path file = tmp.newFile().toPath();
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static List<String> lines(Path file, int chunkSize) throws Exception {
+		return Fs.instance().mapLines(file, chunkSize).lines().collect(Collectors.toList());
+	}
+
+	@Test
+	public void testShouldReadLinesEndingWithLineBreak() throws Exception {
+		assertThat(lines(file("one\ntwo\n\nfour\n"), 1024),
+				is(Arrays.asList("one", "two", "", "four")));
+	}
+
+	@Test
+	public void testShouldReadLastLineWithoutLineBreak() throws Exception {
+		assertThat(lines(file("one\ntwo"), 1024), is(Arrays.asList("one", "two")));
+	}
+
+	@Test
+	public void testShouldKeepLinesWholeAcrossChunks() throws Exception {
+		Path file = file("a rather long first line\nshort\nanother long line here\n");
+		MappedLines mapped = Fs.instance().mapLines(file, 4);
+		assertThat(mapped.chunks().count(), is(3L));
+		assertThat(mapped.lines().collect(Collectors.toList()),
+				is(Arrays.asList("a rather long first line", "short", "another long line here")));
+	}
+
+	@Test
+	public void testShouldDropCarriageReturnOfLineBreak() throws Exception {
+		assertThat(lines(file("one\r\ntwo\r\n"), 5), is(Arrays.asList("one", "two")));
+	}
+
+	@Test
+	public void testShouldKeepCarriageReturnWithoutLineFeed() throws Exception {
+		assertThat(lines(file("one\r\ntwo\r"), 1024), is(Arrays.asList("one", "two\r")));
+	}
+
+	@Test
+	public void testShouldReadEmptyFile() throws Exception {
+		MappedLines mapped = Fs.instance().mapLines(file(""));
+		assertThat(mapped.size(), is(0L));
+		assertThat(mapped.lines().count(), is(0L));
+	}
+
+	@Test
+	public void testShouldReadSameLinesInParallel() throws Exception {
+		StringBuilder content = new StringBuilder();
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 10_000; i++) {
+			String line = "line " + i + (i % 7 == 0 ? " with some more text" : "");
+			expected.add(line);
+			content.append(line).append(i % 3 == 0 ? "\r\n" : "\n");
+		}
+		MappedLines mapped = Fs.instance().mapLines(file(content.toString()), 1000);
+		List<String> parallel = mapped.lines().parallel().collect(Collectors.toList());
+		List<String> sequential = mapped.lines().collect(Collectors.toList());
+		assertThat(sequential, is(expected));
+		Collections.sort(parallel);
+		Collections.sort(expected);
+		assertThat(parallel, is(expected));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testShouldRejectNonPositiveChunkSize() throws Exception {
+		Fs.instance().mapLines(file("line\n"), 0);
+	}
+}
@@ -0,0 +1,153 @@
+package com.gtihub.nyrkovalex.seed.nio;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collections;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TreeCopyTest {
+
+	private static final FileTime LONG_AGO = FileTime.fromMillis(1_000_000_000_000L);
+
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	Path source;
+	Path target;
+
+	@Before
+	public void createTrees() throws Exception {
+		source = tmp.newFolder("source").toPath();
+		target = tmp.getRoot().toPath().resolve("target");
+	}
+
+	private static byte[] file(Path path, int size) throws IOException {
+		byte[] content = new byte[size];
+		new Random(size).nextBytes(content);
+		Files.createDirectories(path.getParent());
+		Files.write(path, content);
+		return content;
+	}
+
+	@Test
+	public void testShouldCopyChannelToChannel() throws Exception {
+		byte[] big = file(source.resolve("a/big"), 300_000);
+		byte[] small = file(source.resolve("small"), 10);
+		TreeCopy.Result result = Fs.instance().copyTree(source, target).zeroCopyThreshold(0).run();
+		assertThat(result.succeeded(), is(true));
+		assertThat(result.copied(), is(2L));
+		assertThat(result.bytes(), is(300_010L));
+		assertThat(Files.readAllBytes(target.resolve("a/big")), is(big));
+		assertThat(Files.readAllBytes(target.resolve("small")), is(small));
+	}
+
+	@Test
+	public void testShouldCopyThroughFilesCopy() throws Exception {
+		byte[] big = file(source.resolve("a/big"), 300_000);
+		Files.createDirectories(source.resolve("empty"));
+		Fs.instance().copyTree(source, target).zeroCopyThreshold(Long.MAX_VALUE).runOrThrow();
+		assertThat(Files.readAllBytes(target.resolve("a/big")), is(big));
+		assertThat(Files.isDirectory(target.resolve("empty")), is(true));
+	}
+
+	@Test
+	public void testShouldPreserveTimesAndPermissions() throws Exception {
+		Path dir = source.resolve("dir");
+		Path script = dir.resolve("script");
+		file(script, 100);
+		Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwxr-x---"));
+		Files.setLastModifiedTime(script, LONG_AGO);
+		Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwx------"));
+		Files.setLastModifiedTime(dir, LONG_AGO);
+		Fs.instance().copyTree(source, target).runOrThrow();
+		assertThat(Files.getLastModifiedTime(target.resolve("dir/script")), is(LONG_AGO));
+		assertThat(PosixFilePermissions.toString(
+				Files.getPosixFilePermissions(target.resolve("dir/script"))), is("rwxr-x---"));
+		assertThat(Files.getLastModifiedTime(target.resolve("dir")), is(LONG_AGO));
+		assertThat(PosixFilePermissions.toString(
+				Files.getPosixFilePermissions(target.resolve("dir"))), is("rwx------"));
+	}
+
+	@Test
+	public void testShouldSkipUnchangedFiles() throws Exception {
+		file(source.resolve("same"), 100);
+		file(source.resolve("changed"), 200);
+		Fs.instance().copyTree(source, target).runOrThrow();
+		byte[] changed = file(source.resolve("changed"), 300);
+		TreeCopy.Result result = Fs.instance().copyTree(source, target).skipUnchanged().run();
+		assertThat(result.skipped(), is(1L));
+		assertThat(result.copied(), is(1L));
+		assertThat(Files.readAllBytes(target.resolve("changed")), is(changed));
+	}
+
+	@Test
+	public void testShouldCopyLinksAsLinks() throws Exception {
+		file(source.resolve("dir/file"), 10);
+		Files.createSymbolicLink(source.resolve("relative"), Paths.get("dir/file"));
+		Files.createSymbolicLink(source.resolve("dir-link"), source.resolve("dir"));
+		Fs.instance().copyTree(source, target).runOrThrow();
+		assertThat(Files.isSymbolicLink(target.resolve("relative")), is(true));
+		assertThat(Files.readSymbolicLink(target.resolve("relative")), is(Paths.get("dir/file")));
+		assertThat(Files.isSymbolicLink(target.resolve("dir-link")), is(true));
+		assertThat(Files.readSymbolicLink(target.resolve("dir-link")), is(source.resolve("dir")));
+	}
+
+	@Test
+	public void testShouldNotWriteThroughLinksInTarget() throws Exception {
+		Path victim = tmp.newFolder("victim").toPath();
+		byte[] kept = file(victim.resolve("file"), 5);
+		Files.setPosixFilePermissions(victim.resolve("file"),
+				PosixFilePermissions.fromString("rw-------"));
+		byte[] big = file(source.resolve("big"), 300_000);
+		byte[] small = file(source.resolve("small"), 10);
+		file(source.resolve("dir/file"), 10);
+		Files.createDirectories(target);
+		Files.createSymbolicLink(target.resolve("big"), victim.resolve("file"));
+		Files.createSymbolicLink(target.resolve("small"), victim.resolve("file"));
+		Files.createSymbolicLink(target.resolve("dir"), victim);
+		TreeCopy.Result result = Fs.instance().copyTree(source, target).zeroCopyThreshold(1000)
+				.run();
+		assertThat(result.failures().keySet(), is(Collections.singleton(source.resolve("dir"))));
+		assertThat(Files.isSymbolicLink(target.resolve("big")), is(false));
+		assertThat(Files.readAllBytes(target.resolve("big")), is(big));
+		assertThat(Files.isSymbolicLink(target.resolve("small")), is(false));
+		assertThat(Files.readAllBytes(target.resolve("small")), is(small));
+		assertThat(Files.readAllBytes(victim.resolve("file")), is(kept));
+		assertThat(PosixFilePermissions.toString(
+				Files.getPosixFilePermissions(victim.resolve("file"))), is("rw-------"));
+		// Directory link is left in place, nothing is copied through it
+		try (Stream<Path> entries = Files.list(victim)) {
+			assertThat(entries.count(), is(1L));
+		}
+	}
+
+	@Test
+	public void testShouldReportFailuresAndGoOn() throws Exception {
+		file(source.resolve("a/file"), 10);
+		file(source.resolve("b/file"), 10);
+		// Target has a file where a directory has to be created
+		Files.createDirectories(target);
+		Files.write(target.resolve("a"), new byte[0]);
+		TreeCopy.Result result = Fs.instance().copyTree(source, target).run();
+		assertThat(result.succeeded(), is(false));
+		assertThat(result.failures().containsKey(source.resolve("a")), is(true));
+		assertThat(Files.exists(target.resolve("b/file")), is(true));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testShouldRejectTargetInsideSource() {
+		Fs.instance().copyTree(source, source.resolve("nested/../copy"));
+	}
+}
@@ -0,0 +1,155 @@
+package com.gtihub.nyrkovalex.seed.nio;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TreeDeleteTest {
+
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	Path root;
+	Path outside;
+
+	@Before
+	public void createTrees() throws Exception {
+		root = tmp.newFolder("root").toPath();
+		outside = tmp.newFolder("outside").toPath();
+		Files.write(outside.resolve("keep"), "keep".getBytes("UTF-8"));
+	}
+
+	private static void file(Path path) throws IOException {
+		Files.createDirectories(path.getParent());
+		Files.write(path, path.getFileName().toString().getBytes("UTF-8"));
+	}
+
+	@Test
+	public void testShouldDeleteNestedTree() throws Exception {
+		file(root.resolve("a/b/c/file"));
+		file(root.resolve("a/file"));
+		Files.createDirectories(root.resolve("empty"));
+		TreeDelete.Result result = Fs.instance().deleteTree(root).run();
+		assertThat(result.succeeded(), is(true));
+		assertThat(result.deleted(), is(7L));
+		assertThat(Files.exists(root), is(false));
+	}
+
+	@Test
+	public void testShouldDeleteDirectoryWiderThanBatch() throws Exception {
+		for (int i = 0; i < 1500; i++) {
+			file(root.resolve("wide/file" + i));
+		}
+		file(root.resolve("wide/nested/file"));
+		TreeDelete.Result result = Fs.instance().deleteTree(root).parallelism(4).run();
+		assertThat(result.succeeded(), is(true));
+		assertThat(result.deleted(), is(1504L));
+		assertThat(Files.exists(root), is(false));
+	}
+
+	@Test
+	public void testShouldNotFollowLinks() throws Exception {
+		file(root.resolve("dir/file"));
+		Files.createSymbolicLink(root.resolve("dir/link"), outside);
+		Files.createSymbolicLink(root.resolve("file-link"), outside.resolve("keep"));
+		Fs.instance().deleteTree(root).runOrThrow();
+		assertThat(Files.exists(root), is(false));
+		assertThat(Files.exists(outside.resolve("keep")), is(true));
+	}
+
+	@Test
+	public void testShouldDeleteOnlyLinkGivenAsRoot() throws Exception {
+		Path link = tmp.getRoot().toPath().resolve("link");
+		Files.createSymbolicLink(link, outside);
+		TreeDelete.Result result = Fs.instance().deleteTree(link).run();
+		assertThat(result.deleted(), is(1L));
+		assertThat(Files.exists(link, LinkOption.NOFOLLOW_LINKS), is(false));
+		assertThat(Files.exists(outside.resolve("keep")), is(true));
+	}
+
+	@Test
+	public void testShouldGoOnAfterFailure() throws Exception {
+		Path busy = root.resolve("busy");
+		file(busy.resolve("first"));
+		for (int i = 0; i < 100; i++) {
+			file(root.resolve("other/file" + i));
+		}
+		List<Path> failed = new ArrayList<>();
+		boolean[] refilled = { false };
+		// A file showing up in a directory already listed makes it fail to delete
+		TreeDelete.Listener listener = new TreeDelete.Listener() {
+			@Override
+			public synchronized void progress(long deleted) {
+				if (!refilled[0] && !Files.exists(busy.resolve("first"))) {
+					refilled[0] = true;
+					try {
+						file(busy.resolve("late"));
+					} catch (IOException ex) {
+						throw new IllegalStateException(ex);
+					}
+				}
+			}
+
+			@Override
+			public synchronized void failed(Path path, IOException error) {
+				failed.add(path);
+			}
+		};
+		TreeDelete.Result result = Fs.instance().deleteTree(root).listener(listener, 1).run();
+		assertThat(result.succeeded(), is(false));
+		assertThat(result.failures().get(busy), instanceOf(DirectoryNotEmptyException.class));
+		assertThat(failed.contains(busy), is(true));
+		assertThat(Files.exists(root.resolve("other")), is(false));
+		assertThat(Files.exists(busy.resolve("late")), is(true));
+		assertThat(Files.exists(root), is(true));
+	}
+
+	@Test
+	public void testShouldDeleteWithContents() throws Exception {
+		file(root.resolve("a/b/file"));
+		Fs.instance().deleteWithContents(root);
+		assertThat(Files.exists(root), is(false));
+	}
+
+	@Test(expected = NoSuchFileException.class)
+	public void testShouldFailToDeleteMissingDirectoryWithContents() throws Exception {
+		Fs.instance().deleteWithContents(root.resolve("missing"));
+	}
+
+	@Test
+	public void testShouldNotDeleteFileAsDirectoryWithContents() throws Exception {
+		try {
+			Fs.instance().deleteWithContents(outside.resolve("keep"));
+			fail("File must not be deleted as a directory");
+		} catch (NotDirectoryException ex) {
+			assertThat(Files.exists(outside.resolve("keep")), is(true));
+		}
+	}
+
+	@Test
+	public void testShouldIgnoreMissingTree() throws Exception {
+		TreeDelete.Result result = Fs.instance().deleteTree(root.resolve("missing")).run();
+		assertThat(result.succeeded(), is(true));
+		assertThat(result.deleted(), is(0L));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testShouldRejectNonPositiveParallelism() {
+		Fs.instance().deleteTree(root).parallelism(0);
+	}
+}
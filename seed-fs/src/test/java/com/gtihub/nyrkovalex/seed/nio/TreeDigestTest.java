@@ -0,0 +1,141 @@
+package com.gtihub.nyrkovalex.seed.nio;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class TreeDigestTest {
+
+	private static final FileTime LONG_AGO = FileTime.fromMillis(1_000_000_000_000L);
+
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	Path root;
+	Path index;
+
+	@Before
+	public void createTree() throws Exception {
+		root = tmp.newFolder("root").toPath();
+		index = tmp.getRoot().toPath().resolve("index");
+		file("a/b/deep", "deep");
+		file("a/shallow", "shallow");
+		file("c/other", "other");
+		file("top", "top");
+	}
+
+	private void file(String path, String content) throws IOException {
+		Path file = root.resolve(path);
+		Files.createDirectories(file.getParent());
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(file, LONG_AGO);
+	}
+
+	private TreeDigest.Result digest() throws IOException {
+		return Fs.instance().digestTree(root).index(index).parallelism(2).run();
+	}
+
+	@Test
+	public void testShouldRehashOnlyChangedFiles() throws Exception {
+		TreeDigest.Result first = digest();
+		assertThat(first.hashed(), is(4));
+		assertThat(first.reused(), is(0));
+		Files.write(root.resolve("a/b/deep"), "DEEP".getBytes(StandardCharsets.UTF_8));
+		TreeDigest.Result second = digest();
+		assertThat(second.hashed(), is(1));
+		assertThat(second.reused(), is(3));
+		assertThat(second.files().get("a/b/deep"), is(not(first.files().get("a/b/deep"))));
+		assertThat(second.files().get("top"), is(first.files().get("top")));
+	}
+
+	@Test
+	public void testShouldChangeHashesUpToRoot() throws Exception {
+		TreeDigest.Result first = digest();
+		Files.write(root.resolve("a/b/deep"), "changed".getBytes(StandardCharsets.UTF_8));
+		TreeDigest.Result second = digest();
+		assertThat(second.hash(), is(not(first.hash())));
+		assertThat(second.hash("a"), is(not(first.hash("a"))));
+		assertThat(second.hash("a/b"), is(not(first.hash("a/b"))));
+		assertThat(second.hash("c"), is(first.hash("c")));
+		assertThat(second.hash("a/shallow"), is(first.hash("a/shallow")));
+	}
+
+	@Test
+	public void testShouldKeepHashesOfUnchangedTree() throws Exception {
+		TreeDigest.Result first = digest();
+		TreeDigest.Result second = digest();
+		assertThat(second.hashed(), is(0));
+		assertThat(second.reused(), is(4));
+		assertThat(second.hash(), is(first.hash()));
+		assertThat(second.files(), is(first.files()));
+		// Index only saves reading files, hashes are the same without it
+		assertThat(Fs.instance().digestTree(root).run().hash(), is(first.hash()));
+	}
+
+	@Test
+	public void testShouldRehashEverythingWithCorruptIndex() throws Exception {
+		TreeDigest.Result first = digest();
+		Files.write(index, "not an index".getBytes(StandardCharsets.UTF_8));
+		TreeDigest.Result second = digest();
+		assertThat(second.hashed(), is(4));
+		assertThat(second.reused(), is(0));
+		assertThat(second.hash(), is(first.hash()));
+		assertThat(digest().reused(), is(4));
+	}
+
+	@Test
+	public void testShouldRehashEverythingWithTruncatedIndex() throws Exception {
+		digest();
+		byte[] saved = Files.readAllBytes(index);
+		Files.write(index, Arrays.copyOf(saved, saved.length - 10));
+		assertThat(digest().hashed(), is(4));
+	}
+
+	@Test
+	public void testShouldHashLinksByTarget() throws Exception {
+		Files.createSymbolicLink(root.resolve("link"), root.resolve("top").getFileName());
+		String linked = digest().hash("link").get();
+		Files.delete(root.resolve("link"));
+		Files.createSymbolicLink(root.resolve("link"), root.resolve("c/other").getFileName());
+		assertThat(digest().hash("link").get(), is(not(linked)));
+	}
+
+	@Test
+	public void testShouldTellLinkFromFileWithItsTarget() throws Exception {
+		Files.createSymbolicLink(root.resolve("link"), root.resolve("top").getFileName());
+		TreeDigest.Result linked = digest();
+		Files.delete(root.resolve("link"));
+		file("link", "top");
+		TreeDigest.Result copied = digest();
+		// Link is hashed by its target path, a file holding the same text must not pass for it
+		assertThat(copied.hash("link"), is(linked.hash("link")));
+		assertThat(copied.hash(), is(not(linked.hash())));
+	}
+
+	@Test
+	public void testShouldRehashFileModifiedAsIndexWasWritten() throws Exception {
+		TreeDigest.Result first = digest();
+		// Same size rewrite within the tick index was written in leaves size and time as they were
+		FileTime tick = FileTime.from(LONG_AGO.toMillis() + 1, TimeUnit.MILLISECONDS);
+		Files.setLastModifiedTime(root.resolve("top"), tick);
+		digest();
+		Files.setLastModifiedTime(index, tick);
+		file("top", "TOP");
+		Files.setLastModifiedTime(root.resolve("top"), tick);
+		TreeDigest.Result second = digest();
+		assertThat(second.hashed(), is(1));
+		assertThat(second.hash("top"), is(not(first.hash("top"))));
+	}
+}
@@ -0,0 +1,171 @@
+package com.gtihub.nyrkovalex.seed.nio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class TreeWatcherTest {
+
+	private static final Duration DEBOUNCE = Duration.ofMillis(300);
+
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	Path root;
+	TreeWatcher watcher;
+	BlockingQueue<TreeWatcher.ChangeSet> delivered = new LinkedBlockingQueue<>();
+
+	@Before
+	public void createTree() throws Exception {
+		root = tmp.newFolder("root").toPath();
+	}
+
+	@After
+	public void stopWatcher() throws Exception {
+		if (watcher != null) {
+			watcher.close();
+		}
+	}
+
+	private void start() throws Exception {
+		watcher = Fs.instance().watch(root).debounce(DEBOUNCE).listener(delivered::add).start();
+	}
+
+	private TreeWatcher.ChangeSet next() throws Exception {
+		TreeWatcher.ChangeSet changes = delivered.poll(10, TimeUnit.SECONDS);
+		assertThat(changes, notNullValue());
+		return changes;
+	}
+
+	private static Map<Path, TreeWatcher.Change> changes(Object... pathsAndChanges) {
+		Map<Path, TreeWatcher.Change> changes = new HashMap<>();
+		for (int i = 0; i < pathsAndChanges.length; i += 2) {
+			changes.put((Path) pathsAndChanges[i], (TreeWatcher.Change) pathsAndChanges[i + 1]);
+		}
+		return changes;
+	}
+
+	@Test
+	public void testShouldCoalesceChangesWithinWindow() throws Exception {
+		Path file = root.resolve("file");
+		Files.write(file, new byte[] { 0 });
+		start();
+		for (int i = 1; i <= 5; i++) {
+			Files.write(file, new byte[i]);
+		}
+		Files.write(root.resolve("other"), new byte[] { 1 });
+		assertThat(new HashMap<>(next().changes()), is(changes(
+				file, TreeWatcher.Change.MODIFIED,
+				root.resolve("other"), TreeWatcher.Change.CREATED)));
+		assertThat(delivered.poll(DEBOUNCE.toMillis() * 3, TimeUnit.MILLISECONDS), nullValue());
+	}
+
+	@Test
+	public void testShouldLeaveOutPathsCreatedAndDeleted() throws Exception {
+		start();
+		Path gone = root.resolve("gone");
+		Files.write(gone, new byte[] { 0 });
+		Files.delete(gone);
+		Files.createDirectories(root.resolve("gone-dir/nested"));
+		Files.delete(root.resolve("gone-dir/nested"));
+		Files.delete(root.resolve("gone-dir"));
+		Files.write(root.resolve("kept"), new byte[] { 0 });
+		assertThat(new HashMap<>(next().changes()), is(changes(
+				root.resolve("kept"), TreeWatcher.Change.CREATED)));
+	}
+
+	@Test
+	public void testShouldWatchNewDirectories() throws Exception {
+		start();
+		Path nested = root.resolve("dir/nested");
+		Files.createDirectories(nested);
+		Files.write(nested.resolve("early"), new byte[] { 0 });
+		assertThat(new HashMap<>(next().changes()), is(changes(
+				root.resolve("dir"), TreeWatcher.Change.CREATED,
+				nested, TreeWatcher.Change.CREATED,
+				nested.resolve("early"), TreeWatcher.Change.CREATED)));
+		Files.write(nested.resolve("late"), new byte[] { 0 });
+		Files.delete(nested.resolve("early"));
+		assertThat(new HashMap<>(next().changes()), is(changes(
+				nested.resolve("late"), TreeWatcher.Change.CREATED,
+				nested.resolve("early"), TreeWatcher.Change.DELETED)));
+	}
+
+	@Test
+	public void testShouldReportDirectoryContentsDeleted() throws Exception {
+		Files.createDirectories(root.resolve("dir/nested"));
+		Files.write(root.resolve("dir/nested/file"), new byte[] { 0 });
+		start();
+		Fs.instance().deleteWithContents(root.resolve("dir"));
+		assertThat(new HashMap<>(next().changes()), is(changes(
+				root.resolve("dir"), TreeWatcher.Change.DELETED,
+				root.resolve("dir/nested"), TreeWatcher.Change.DELETED,
+				root.resolve("dir/nested/file"), TreeWatcher.Change.DELETED)));
+	}
+
+	@Test
+	public void testShouldRescanOnOverflow() throws Exception {
+		Files.createDirectories(root.resolve("sub"));
+		Files.write(root.resolve("sub/existing"), new byte[] { 0 });
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		// Holding the watching thread in the listener lets events pile up past the key limit
+		watcher = Fs.instance().watch(root).debounce(DEBOUNCE).listener(changes -> {
+			delivered.add(changes);
+			if (blocked.getCount() > 0) {
+				blocked.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}).start();
+		Files.write(root.resolve("first"), new byte[] { 0 });
+		assertThat(blocked.await(10, TimeUnit.SECONDS), is(true));
+		Map<Path, TreeWatcher.Change> expected = new HashMap<>();
+		for (int i = 0; i < 1000; i++) {
+			Path file = Files.createFile(root.resolve("file" + i));
+			expected.put(file, TreeWatcher.Change.CREATED);
+		}
+		Files.createDirectories(root.resolve("late/nested"));
+		Files.createFile(root.resolve("late/nested/file"));
+		expected.put(root.resolve("late"), TreeWatcher.Change.CREATED);
+		expected.put(root.resolve("late/nested"), TreeWatcher.Change.CREATED);
+		expected.put(root.resolve("late/nested/file"), TreeWatcher.Change.CREATED);
+		Files.delete(root.resolve("first"));
+		expected.put(root.resolve("first"), TreeWatcher.Change.DELETED);
+		release.countDown();
+
+		assertThat(next().changes(), is(Collections.singletonMap(
+				root.resolve("first"), TreeWatcher.Change.CREATED)));
+		Map<Path, TreeWatcher.Change> changes = new HashMap<>();
+		boolean rescanned = false;
+		while (changes.size() < expected.size()) {
+			TreeWatcher.ChangeSet changeSet = next();
+			changes.putAll(changeSet.changes());
+			rescanned |= changeSet.rescanned();
+		}
+		assertThat(rescanned, is(true));
+		assertThat(changes, is(expected));
+		// Known subdirectory is left to its own key and is not reported again
+		assertThat(changes.containsKey(root.resolve("sub/existing")), is(false));
+	}
+}
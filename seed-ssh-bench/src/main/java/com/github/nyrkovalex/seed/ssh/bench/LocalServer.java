@@ -0,0 +1,26 @@
+package com.github.nyrkovalex.seed.ssh.bench;
+
+import com.github.nyrkovalex.seed.ssh.Ssh;
+import com.github.nyrkovalex.seed.ssh.test.LocalSshServer;
+import org.apache.sshd.scp.server.ScpCommandFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * SSH server bound to localhost accepting any password, serves scp against local files
+ */
+class LocalServer extends LocalSshServer {
+
+	LocalServer(Path workDir) throws IOException {
+		super(workDir, new ScpCommandFactory.Builder().build());
+	}
+
+	Ssh.SessionsBuilder sessions() {
+		return Ssh.sessions()
+				.identity(null)
+				.userInfo(PasswordUserInfo::new)
+				.config("StrictHostKeyChecking", "no")
+				.config("PreferredAuthentications", "password");
+	}
+}
@@ -0,0 +1,264 @@
+package com.github.nyrkovalex.seed.ssh.bench;
+
+import com.github.nyrkovalex.seed.ssh.ScpCommand;
+import com.github.nyrkovalex.seed.ssh.ScpResult;
+import com.github.nyrkovalex.seed.ssh.Ssh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * Measures {@link ScpCommand} against an SSH server started in-process on localhost. Three sweeps
+ * are run: single files of every size with every buffer size, batches of small files with every
+ * parallelism, and the same batches over a warm session pool versus fresh sessions per run.
+ * Every row reports median MB/s over iterations, files per second and per-file latency.
+ * </p>
+ * <p>
+ * Arguments are optional <code>key=value</code> pairs, sizes take K, M and G suffixes:
+ * </p>
+ * <pre>
+ * sizes=1K,64K,1M,16M,256M,1G  buffers=32K,256K,1M  counts=16,256  small=4K
+ * parallelism=1,4  iterations=3  warmup=1
+ * </pre>
+ * <p>
+ * Files are written to a temporary directory which needs twice the largest size free. Nothing
+ * here runs during the build, start it with this module's runtime classpath, e.g. one printed by
+ * <code>mvn -pl seed-ssh-bench dependency:build-classpath</code>.
+ * </p>
+ */
+public final class ScpBenchmark {
+
+	private static final String USER = "bench";
+	private static final int DEFAULT_BUFFER = 256 * 1024;
+	private static final Map<String, String> DEFAULTS = new HashMap<>();
+
+	static {
+		DEFAULTS.put("sizes", "1K,64K,1M,16M,256M,1G");
+		DEFAULTS.put("buffers", "32K,256K,1M");
+		DEFAULTS.put("counts", "16,256");
+		DEFAULTS.put("small", "4K");
+		DEFAULTS.put("parallelism", "1,4");
+		DEFAULTS.put("iterations", "3");
+		DEFAULTS.put("warmup", "1");
+	}
+
+	private final LocalServer server;
+	private final Path work;
+	private final Map<String, String> options;
+	private final int iterations;
+	private final int warmup;
+
+	private ScpBenchmark(LocalServer server, Path work, Map<String, String> options) {
+		this.server = server;
+		this.work = work;
+		this.options = options;
+		this.iterations = Integer.parseInt(options.get("iterations"));
+		this.warmup = Integer.parseInt(options.get("warmup"));
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>(DEFAULTS);
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (eq < 0 || !DEFAULTS.containsKey(arg.substring(0, eq))) {
+				throw new IllegalArgumentException("Unknown argument " + arg
+						+ ", expected one of " + DEFAULTS.keySet());
+			}
+			options.put(arg.substring(0, eq), arg.substring(eq + 1));
+		}
+		Path work = Files.createTempDirectory("seed-ssh-bench");
+		try (LocalServer server = new LocalServer(work)) {
+			new ScpBenchmark(server, work, options).run();
+		} finally {
+			delete(work);
+		}
+	}
+
+	private void run() throws IOException {
+		System.out.printf("%-8s %10s %6s %8s %4s %10s %10s %10s %10s %10s%n", "sweep", "size",
+				"files", "buffer", "par", "MB/s", "files/s", "lat ms", "p99 ms", "hshake ms");
+		try (Ssh.Sessions sessions = server.sessions().build()) {
+			for (long size : list("sizes", ScpBenchmark::bytes)) {
+				List<Path> file = files("single", 1, size);
+				for (long buffer : list("buffers", ScpBenchmark::bytes)) {
+					report("size", size, 1, (int) buffer, 1,
+							repeat(sessions, file, (int) buffer, 1));
+				}
+				delete(file.get(0));
+			}
+			long small = bytes(options.get("small"));
+			for (int count : list("counts", Integer::parseInt)) {
+				List<Path> batch = files("batch" + count, count, small);
+				for (int parallelism : list("parallelism", Integer::parseInt)) {
+					report("count", small, count, DEFAULT_BUFFER, parallelism,
+							repeat(sessions, batch, DEFAULT_BUFFER, parallelism));
+				}
+				report("pooled", small, count, DEFAULT_BUFFER, 1,
+						repeat(sessions, batch, DEFAULT_BUFFER, 1));
+				report("fresh", small, count, DEFAULT_BUFFER, 1,
+						repeat(null, batch, DEFAULT_BUFFER, 1));
+			}
+		}
+	}
+
+	/**
+	 * Sends files through given pool, or through a new one per run so every run pays for
+	 * connecting if it is null
+	 */
+	private List<Run> repeat(Ssh.Sessions pool, List<Path> files, int buffer, int parallelism)
+			throws IOException {
+		Path target = Files.createDirectories(work.resolve("target"));
+		List<Run> runs = new ArrayList<>(iterations);
+		for (int i = 0; i < warmup + iterations; i++) {
+			Ssh.Sessions sessions = pool == null ? server.sessions().build() : pool;
+			ScpCommand scp = sessions.scpTo(server.address())
+					.asUser(USER)
+					.bufferSize(buffer)
+					.parallelism(parallelism);
+			for (int f = 0; f < files.size(); f++) {
+				scp.file(files.get(f).toString(), target.resolve("copy" + f).toString());
+			}
+			long started = System.nanoTime();
+			List<ScpResult> results = scp.send();
+			long nanos = System.nanoTime() - started;
+			if (pool == null) {
+				sessions.close();
+			}
+			for (ScpResult result : results) {
+				if (!result.succeeded()) {
+					throw new IllegalStateException(result.toString());
+				}
+			}
+			if (i >= warmup) {
+				runs.add(new Run(results, nanos));
+			}
+		}
+		delete(target);
+		return runs;
+	}
+
+	private static void report(String sweep, long size, int count, int buffer, int parallelism,
+			List<Run> runs) {
+		double[] mbPerSecond = runs.stream()
+				.mapToDouble(r -> r.bytes() / 1e6 / (r.nanos / 1e9))
+				.sorted()
+				.toArray();
+		double[] filesPerSecond = runs.stream()
+				.mapToDouble(r -> r.results.size() / (r.nanos / 1e9))
+				.sorted()
+				.toArray();
+		List<Double> latencies = runs.stream()
+				.flatMap(r -> r.results.stream())
+				.map(r -> r.elapsed().toNanos() / 1e6)
+				.sorted()
+				.collect(Collectors.toList());
+		double handshake = runs.stream()
+				.flatMap(r -> r.results.stream())
+				.mapToDouble(r -> r.handshake().toNanos() / 1e6)
+				.average()
+				.orElse(0);
+		System.out.printf("%-8s %10s %6d %8s %4d %10.2f %10.1f %10.2f %10.2f %10.2f%n", sweep,
+				human(size), count, human(buffer), parallelism, median(mbPerSecond),
+				median(filesPerSecond),
+				latencies.stream().mapToDouble(Double::doubleValue).average().orElse(0),
+				latencies.get((int) Math.ceil(latencies.size() * 0.99) - 1), handshake);
+	}
+
+	private List<Path> files(String name, int count, long size) throws IOException {
+		Path dir = Files.createDirectories(work.resolve(name));
+		Random random = new Random(size);
+		byte[] chunk = new byte[(int) Math.min(size, 1024 * 1024)];
+		List<Path> files = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			Path file = dir.resolve("file" + i);
+			try (OutputStream out = Files.newOutputStream(file)) {
+				for (long left = size; left > 0; left -= chunk.length) {
+					random.nextBytes(chunk);
+					out.write(chunk, 0, (int) Math.min(chunk.length, left));
+				}
+			}
+			files.add(file);
+		}
+		return files;
+	}
+
+	private <T> List<T> list(String option, Function<String, T> parser) {
+		return Collections.unmodifiableList(Arrays.stream(options.get(option).split(","))
+				.map(String::trim)
+				.map(parser)
+				.collect(Collectors.toList()));
+	}
+
+	private static long bytes(String size) {
+		String value = size.trim().toUpperCase();
+		char unit = value.charAt(value.length() - 1);
+		int shift = unit == 'K' ? 10 : unit == 'M' ? 20 : unit == 'G' ? 30 : 0;
+		String number = shift == 0 ? value : value.substring(0, value.length() - 1);
+		return Long.parseLong(number) << shift;
+	}
+
+	private static String human(long bytes) {
+		String[] units = { "B", "K", "M", "G" };
+		int unit = 0;
+		while (unit < units.length - 1 && bytes >= 1024 && bytes % 1024 == 0) {
+			bytes /= 1024;
+			unit++;
+		}
+		return bytes + units[unit];
+	}
+
+	private static double median(double[] sorted) {
+		int middle = sorted.length / 2;
+		return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+	}
+
+	private static void delete(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return;
+		}
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+					throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException ex)
+					throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private static final class Run {
+		final List<ScpResult> results;
+		final long nanos;
+
+		Run(List<ScpResult> results, long nanos) {
+			this.results = results;
+			this.nanos = nanos;
+		}
+
+		long bytes() {
+			return results.stream().mapToLong(ScpResult::bytes).sum();
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.github.nyrkovalex.seed.ssh.test;
+
+import com.jcraft.jsch.UserInfo;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.config.keys.KeyUtils;
+import org.apache.sshd.common.kex.BuiltinDHFactories;
+import org.apache.sshd.common.signature.BuiltinSignatures;
+import org.apache.sshd.server.ServerBuilder;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.command.CommandFactory;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.subsystem.SubsystemFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SSH server bound to localhost accepting any password, set up for JSch this project is built
+ * with. Commands and subsystems are up to the caller.
+ */
+public class LocalSshServer implements AutoCloseable {
+
+	private final SshServer server;
+
+	/**
+	 * Starts the server on a free port
+	 *
+	 * @param workDir directory to keep generated host key in
+	 * @param commands runs exec requests
+	 * @param subsystems subsystems such as sftp
+	 * @throws IOException if server cannot be started
+	 */
+	public LocalSshServer(Path workDir, CommandFactory commands, SubsystemFactory... subsystems)
+			throws IOException {
+		SimpleGeneratorHostKeyProvider hostKeys =
+				new SimpleGeneratorHostKeyProvider(workDir.resolve("host.key"));
+		// JSch 0.1.51 only knows RSA and DSA host keys signed with SHA-1 and SHA-1 key exchanges
+		hostKeys.setAlgorithm(KeyUtils.RSA_ALGORITHM);
+		@SuppressWarnings("deprecation")
+		List<BuiltinDHFactories> sha1Exchanges =
+				Arrays.asList(BuiltinDHFactories.dhg14, BuiltinDHFactories.dhgex);
+		server = SshServer.setUpDefaultServer();
+		// Any password opens a shell, nothing but this host may connect
+		server.setHost("localhost");
+		server.setPort(0);
+		server.setKeyPairProvider(hostKeys);
+		server.setSignatureFactories(Collections.singletonList(BuiltinSignatures.rsa));
+		server.setKeyExchangeFactories(NamedFactory.setUpTransformedFactories(false,
+				sha1Exchanges, ServerBuilder.DH2KEX));
+		server.setPasswordAuthenticator((user, password, session) -> true);
+		server.setCommandFactory(commands);
+		server.setSubsystemFactories(Arrays.asList(subsystems));
+		server.start();
+	}
+
+	/**
+	 * @return host and port to connect to
+	 */
+	public String address() {
+		return "localhost:" + server.getPort();
+	}
+
+	public int activeSessions() {
+		return server.getActiveSessions().size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.stop(true);
+	}
+
+	/**
+	 * Answers every prompt, password is whatever since server takes any
+	 */
+	public static class PasswordUserInfo implements UserInfo {
+		@Override
+		public String getPassphrase() {
+			return null;
+		}
+
+		@Override
+		public String getPassword() {
+			return "secret";
+		}
+
+		@Override
+		public boolean promptPassword(String message) {
+			return true;
+		}
+
+		@Override
+		public boolean promptPassphrase(String message) {
+			return false;
+		}
+
+		@Override
+		public boolean promptYesNo(String message) {
+			return true;
+		}
+
+		@Override
+		public void showMessage(String message) {
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import com.jcraft.jsch.ChannelExec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs a shell command on one or more hosts. Output is passed to consumers line by line as it
+ * arrives, with the host it came from. Consumers are called on internal threads: stdout ones on
+ * the thread running the command, stderr ones on the session thread, so they should be quick and
+ * thread safe when several hosts run at once.
+ */
+public class ExecCommand {
+
+	private static final long CLOSE_POLL_MILLIS = 10;
+	private static final BiConsumer<String, String> IGNORE = (host, line) -> {
+	};
+
+	private String username;
+	private final List<String> addresses;
+	private final String command;
+	private final SessionPool sessions;
+	private BiConsumer<String, String> stdout = IGNORE;
+	private BiConsumer<String, String> stderr = IGNORE;
+	private int parallelism = 1;
+
+	ExecCommand(List<String> addresses, String command, SessionPool sessions) {
+		this.addresses = addresses;
+		this.command = Objects.requireNonNull(command);
+		this.sessions = sessions;
+	}
+
+	public ExecCommand asUser(String username) {
+		this.username = username;
+		return this;
+	}
+
+	/**
+	 * @param consumer takes host and line of its standard output
+	 * @return this command
+	 */
+	public ExecCommand stdout(BiConsumer<String, String> consumer) {
+		this.stdout = Objects.requireNonNull(consumer);
+		return this;
+	}
+
+	/**
+	 * @param consumer takes host and line of its standard error
+	 * @return this command
+	 */
+	public ExecCommand stderr(BiConsumer<String, String> consumer) {
+		this.stderr = Objects.requireNonNull(consumer);
+		return this;
+	}
+
+	/**
+	 * Sets how many hosts may run the command at once
+	 *
+	 * @param parallelism max number of concurrent runs
+	 * @return this command
+	 */
+	public ExecCommand parallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Starts the command on every host without waiting for it
+	 *
+	 * @return future of one result per host in the order given, a failed host does not fail it
+	 */
+	public CompletableFuture<List<ExecResult>> start() {
+		List<Callable<ExecResult>> runs = new ArrayList<>(addresses.size());
+		for (String address : addresses) {
+			runs.add(() -> exec(address));
+		}
+		return Transfers.start(runs, parallelism, "exec");
+	}
+
+	/**
+	 * Runs the command on every host and waits for all of them
+	 *
+	 * @return one result per host in the order given
+	 */
+	public List<ExecResult> run() {
+		return start().join();
+	}
+
+	private ExecResult exec(String address) {
+		long started = System.nanoTime();
+		int exitStatus = -1;
+		SshException error = null;
+		try (SessionPool.Lease lease = sessions.lease(username, address);
+				LineOutputStream out = new LineOutputStream(line -> stdout.accept(address, line));
+				LineOutputStream err = new LineOutputStream(line -> stderr.accept(address, line))) {
+			ChannelExec channel = lease.channel("exec");
+			channel.setCommand(command);
+			channel.setErrStream(err, true);
+			try (SshChannel sshChannel = new SshChannel(channel)) {
+				sshChannel.pipeTo(out);
+			}
+			awaitClose(channel);
+			exitStatus = channel.getExitStatus();
+		} catch (SshException ex) {
+			error = ex;
+		} catch (IOException | RuntimeException ex) {
+			error = new SshException(ex);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			error = new SshException(ex);
+		}
+		return new ExecResult(address, exitStatus, error, System.nanoTime() - started);
+	}
+
+	/**
+	 * Quotes an argument for remote shell
+	 */
+	static String quote(String arg) {
+		return "'" + arg.replace("'", "'\\''") + "'";
+	}
+
+	/**
+	 * Exit status arrives after output ends, JSch has no way to wait for it but polling
+	 */
+	private static void awaitClose(ChannelExec channel) throws InterruptedException {
+		while (!channel.isClosed()) {
+			Thread.sleep(CLOSE_POLL_MILLIS);
+		}
+	}
+}
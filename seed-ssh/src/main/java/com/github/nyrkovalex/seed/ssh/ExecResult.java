@@ -0,0 +1,57 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Outcome of running a command on one host
+ */
+public class ExecResult {
+
+	private final String host;
+	private final int exitStatus;
+	private final SshException error;
+	private final long nanos;
+
+	ExecResult(String host, int exitStatus, SshException error, long nanos) {
+		this.host = host;
+		this.exitStatus = exitStatus;
+		this.error = error;
+		this.nanos = nanos;
+	}
+
+	public String host() {
+		return host;
+	}
+
+	/**
+	 * @return exit status of remote command, -1 if it did not report one
+	 */
+	public int exitStatus() {
+		return exitStatus;
+	}
+
+	/**
+	 * @return true if command ran and exited with zero status
+	 */
+	public boolean succeeded() {
+		return error == null && exitStatus == 0;
+	}
+
+	/**
+	 * @return reason command could not be run, exit status is not an error
+	 */
+	public Optional<SshException> error() {
+		return Optional.ofNullable(error);
+	}
+
+	public Duration elapsed() {
+		return Duration.ofNanos(nanos);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %s", host,
+				error != null ? "FAILED: " + error.getMessage() : "EXIT " + exitStatus);
+	}
+}
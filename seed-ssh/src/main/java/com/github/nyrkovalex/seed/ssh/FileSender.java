@@ -0,0 +1,128 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * Streams exactly <code>size</code> bytes of a file to a sink. Files fitting a single buffer are
+ * read and written on the calling thread. Larger ones are read by a separate thread into a ring of
+ * buffers so the next buffer is filled from disk while the previous one goes over the wire.
+ * </p>
+ * <p>
+ * Buffers are heap ones since JSch channel streams take byte arrays anyway, mapping the file would
+ * only add a copy.
+ * </p>
+ */
+class FileSender {
+
+	static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+	private static final int BUFFERS = 3;
+	private static final ByteBuffer DONE = ByteBuffer.allocate(0);
+
+	@FunctionalInterface
+	interface Sink {
+		void write(byte[] buf, int offset, int length) throws IOException;
+	}
+
+	private final int bufferSize;
+
+	FileSender(int bufferSize) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("Buffer size must be positive");
+		}
+		this.bufferSize = bufferSize;
+	}
+
+	void send(Path file, long size, Sink sink) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (size <= bufferSize) {
+				ByteBuffer buffer = ByteBuffer.allocate((int) size);
+				fill(channel, buffer, file);
+				sink.write(buffer.array(), 0, buffer.limit());
+				return;
+			}
+			pipeline(channel, size, sink, file);
+		}
+	}
+
+	private void pipeline(FileChannel channel, long size, Sink sink, Path file)
+			throws IOException {
+		BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BUFFERS);
+		BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(BUFFERS + 1);
+		for (int i = 0; i < BUFFERS; i++) {
+			free.add(ByteBuffer.allocate(bufferSize));
+		}
+		AtomicReference<IOException> readFailure = new AtomicReference<>();
+		Thread reader = new Thread(() -> {
+			try {
+				long remaining = size;
+				while (remaining > 0) {
+					ByteBuffer buffer = free.take();
+					buffer.clear();
+					buffer.limit((int) Math.min(buffer.capacity(), remaining));
+					fill(channel, buffer, file);
+					remaining -= buffer.limit();
+					full.put(buffer);
+				}
+			} catch (IOException ex) {
+				readFailure.set(ex);
+			} catch (InterruptedException ex) {
+				// Writer gave up
+				return;
+			}
+			full.add(DONE);
+		}, "seed-ssh-file-reader");
+		reader.setDaemon(true);
+		reader.start();
+		try {
+			while (true) {
+				ByteBuffer buffer = full.take();
+				if (buffer == DONE) {
+					break;
+				}
+				sink.write(buffer.array(), 0, buffer.limit());
+				free.put(buffer);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while sending " + file);
+		} finally {
+			reader.interrupt();
+			joinQuietly(reader);
+		}
+		IOException ex = readFailure.get();
+		if (ex != null) {
+			throw ex;
+		}
+	}
+
+	/**
+	 * Reads until buffer limit, the file must not get shorter than announced meanwhile
+	 */
+	private static void fill(FileChannel channel, ByteBuffer buffer, Path file)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException(file + " got shorter while being sent");
+			}
+		}
+		buffer.flip();
+	}
+
+	private static void joinQuietly(Thread thread) {
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
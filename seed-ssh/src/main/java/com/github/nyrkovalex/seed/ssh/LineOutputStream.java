@@ -0,0 +1,60 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Splits written bytes into UTF-8 lines passing each one to a consumer as soon as it ends. Line
+ * separators are dropped, unterminated last line is passed on close.
+ */
+class LineOutputStream extends OutputStream {
+
+	private final Consumer<String> consumer;
+	private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+	LineOutputStream(Consumer<String> consumer) {
+		this.consumer = consumer;
+	}
+
+	@Override
+	public synchronized void write(int b) {
+		if (b == '\n') {
+			emit();
+		} else {
+			line.write(b);
+		}
+	}
+
+	@Override
+	public synchronized void write(byte[] buf, int offset, int length) {
+		int start = offset;
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			if (buf[i] == '\n') {
+				line.write(buf, start, i - start);
+				emit();
+				start = i + 1;
+			}
+		}
+		line.write(buf, start, end - start);
+	}
+
+	@Override
+	public synchronized void close() {
+		if (line.size() > 0) {
+			emit();
+		}
+	}
+
+	private void emit() {
+		byte[] bytes = line.toByteArray();
+		int length = bytes.length;
+		if (length > 0 && bytes[length - 1] == '\r') {
+			length--;
+		}
+		line.reset();
+		consumer.accept(new String(bytes, 0, length, StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,87 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import java.nio.file.Path;
+
+/**
+ * Times handshake and counts file bytes written by one transfer, reporting them to a listener no
+ * more often than once per interval. Checking the clock once per written buffer is all it costs
+ * the write loop.
+ */
+class ProgressMeter {
+
+	private final String host;
+	private final ScpListener listener;
+	private final long intervalNanos;
+	private final long created = System.nanoTime();
+	private long connected;
+	private String file;
+	private long size;
+	private long sent;
+	private long total;
+	private long started;
+	private long reportedAt;
+	private long reportedSent;
+
+	ProgressMeter(String host, ScpListener listener, long intervalNanos) {
+		this.host = host;
+		this.listener = listener;
+		this.intervalNanos = intervalNanos;
+	}
+
+	/**
+	 * Marks the end of handshake: session is leased and remote command started
+	 */
+	void connected() {
+		connected = System.nanoTime();
+	}
+
+	/**
+	 * Wraps a sink so that bytes passed through it are counted against given file
+	 */
+	FileSender.Sink sink(Path file, long size, FileSender.Sink target) {
+		this.file = file.toString();
+		this.size = size;
+		this.sent = 0;
+		this.started = System.nanoTime();
+		this.reportedAt = started;
+		this.reportedSent = 0;
+		return (buf, offset, length) -> {
+			target.write(buf, offset, length);
+			sent(length);
+		};
+	}
+
+	/**
+	 * Reports current file as done
+	 */
+	void done() {
+		report(System.nanoTime(), true);
+	}
+
+	/**
+	 * Outcome of the transfer measured from creation of this meter
+	 */
+	ScpResult result(ScpFile file, SshException error) {
+		long now = System.nanoTime();
+		long handshake = (connected == 0 ? now : connected) - created;
+		return new ScpResult(host, file, error, now - created, handshake, total);
+	}
+
+	private void sent(int length) {
+		sent += length;
+		total += length;
+		long now = System.nanoTime();
+		if (now - reportedAt >= intervalNanos) {
+			report(now, false);
+		}
+	}
+
+	private void report(long now, boolean done) {
+		long nanos = now - reportedAt;
+		double bytesPerSecond = nanos == 0 ? 0 : (sent - reportedSent) * 1e9 / nanos;
+		reportedAt = now;
+		reportedSent = sent;
+		listener.progress(new ScpProgress(host, file, size, sent, now - started, bytesPerSecond,
+				done));
+	}
+}
@@ -0,0 +1,62 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads a range of a file with positional reads, so several ranges may share one channel. Bytes
+ * read are added to a counter.
+ */
+class RangeInputStream extends InputStream {
+
+	private final FileChannel channel;
+	private final AtomicLong counter;
+	private long position;
+	private long remaining;
+
+	RangeInputStream(FileChannel channel, long position, long length, AtomicLong counter) {
+		this.channel = channel;
+		this.position = position;
+		this.remaining = length;
+		this.counter = counter;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] one = new byte[1];
+		return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] buf, int offset, int length) throws IOException {
+		if (remaining == 0) {
+			return -1;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(buf, offset, (int) Math.min(length, remaining));
+		int read = channel.read(buffer, position);
+		if (read < 0) {
+			throw new EOFException("File got shorter while being sent");
+		}
+		position += read;
+		remaining -= read;
+		counter.addAndGet(read);
+		return read;
+	}
+
+	@Override
+	public long skip(long n) {
+		long skipped = Math.max(0, Math.min(n, remaining));
+		position += skipped;
+		remaining -= skipped;
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return (int) Math.min(remaining, Integer.MAX_VALUE);
+	}
+}
@@ -1,27 +1,39 @@
 package com.github.nyrkovalex.seed.ssh;
 
-import com.github.nyrkovalex.seed.Sys;
 import com.jcraft.jsch.ChannelExec;
-import com.jcraft.jsch.JSch;
-import com.jcraft.jsch.JSchException;
-import com.jcraft.jsch.Session;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
 
 public class ScpCommand {
 
+	private static final ScpListener NO_LISTENER = new ScpListener() {
+	};
+	private static final Duration DEFAULT_PROGRESS_INTERVAL = Duration.ofSeconds(1);
+
 	private String username;
 	private final List<ScpFile> files;
-	private final String address;
+	private final List<String> addresses;
+	private final SessionPool sessions;
+	private int bufferSize = FileSender.DEFAULT_BUFFER_SIZE;
+	private int parallelism = 1;
+	private Path manifest;
+	private ScpListener listener = NO_LISTENER;
+	private long progressIntervalNanos = DEFAULT_PROGRESS_INTERVAL.toNanos();
 
-	ScpCommand(String address) {
+	ScpCommand(List<String> addresses, SessionPool sessions) {
 		this.files = new ArrayList<>();
-		this.address = address;
+		this.addresses = addresses;
+		this.sessions = sessions;
 	}
 
 	public ScpCommand file(String from, String to) {
@@ -29,80 +41,277 @@ public class ScpCommand {
 		return this;
 	}
 
+	/**
+	 * Adds a directory to send with everything in it. Like <code>scp -r</code> it ends up as
+	 * <code>to</code> if there is no such remote directory yet, inside of <code>to</code> otherwise.
+	 *
+	 * @param from local directory
+	 * @param to remote path
+	 * @return this command
+	 */
+	public ScpCommand directory(String from, String to) {
+		this.files.add(new ScpFile(from, to, true));
+		return this;
+	}
+
 	public ScpCommand asUser(String username) {
 		this.username = username;
 		return this;
 	}
 
+	/**
+	 * Sets size of buffers file content is read into, bigger ones mean fewer disk reads and
+	 * channel writes per file
+	 *
+	 * @param bufferSize buffer size in bytes
+	 * @return this command
+	 */
+	public ScpCommand bufferSize(int bufferSize) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("Buffer size must be positive");
+		}
+		this.bufferSize = bufferSize;
+		return this;
+	}
+
+	/**
+	 * Sets how many files may be in flight at once across all hosts. Each one takes a channel of
+	 * a pooled session, more sessions are opened when channels of existing ones run out.
+	 *
+	 * @param parallelism max number of concurrent transfers
+	 * @return this command
+	 */
+	public ScpCommand parallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Sends only files whose remote copies differ. Remote digests are taken with a single
+	 * <code>sha256sum</code> call per host and compared to local ones, which are kept in a
+	 * manifest file along with sizes and modification times so unchanged local files are not
+	 * hashed again. Directories added with {@link #directory(String, String)} are always sent.
+	 * If manifest cannot be read nothing is sent, if it cannot be saved files are sent but all
+	 * results fail with the error.
+	 *
+	 * @param manifest local file to keep digests in, created if missing
+	 * @return this command
+	 */
+	public ScpCommand incremental(String manifest) {
+		this.manifest = Paths.get(manifest);
+		return this;
+	}
+
+	/**
+	 * Reports transfer progress to given listener at most once a second per transfer
+	 *
+	 * @param listener listener to report to
+	 * @return this command
+	 */
+	public ScpCommand progress(ScpListener listener) {
+		return progress(listener, DEFAULT_PROGRESS_INTERVAL);
+	}
+
+	/**
+	 * Reports transfer progress to given listener
+	 *
+	 * @param listener listener to report to
+	 * @param interval min time between progress reports of one transfer
+	 * @return this command
+	 */
+	public ScpCommand progress(ScpListener listener, Duration interval) {
+		if (interval.isNegative()) {
+			throw new IllegalArgumentException("Progress interval must not be negative");
+		}
+		this.listener = Objects.requireNonNull(listener);
+		this.progressIntervalNanos = interval.toNanos();
+		return this;
+	}
+
+	/**
+	 * Sends every file to every host and fails if any of them could not be sent
+	 *
+	 * @throws SshException first failure, other ones are attached as suppressed
+	 */
 	public void run() throws SshException {
-		Session session = null;
-		ChannelExec channel = null;
-		try {
-			session = createSession();
-			session.connect();
-			channel = (ChannelExec) session.openChannel("exec");
-			for (ScpFile f : files) {
-				sendFile(channel, f);
+		Transfers.throwFailures(send());
+	}
+
+	/**
+	 * Sends every file to every host, a failed transfer does not stop the other ones
+	 *
+	 * @return one result per file and host, hosts first then files in the order added
+	 */
+	public List<ScpResult> send() {
+		if (manifest != null) {
+			return sendChanged();
+		}
+		List<Transfer> transfers = new ArrayList<>(addresses.size() * files.size());
+		for (String address : addresses) {
+			for (ScpFile file : files) {
+				transfers.add(new Transfer(address, file));
 			}
-		} catch (JSchException | IOException ex) {
-			throw new SshException(ex);
-		} finally {
-			disconnect(channel, session);
 		}
+		return Transfers.run(transfers, parallelism);
 	}
 
-	private void sendFile(ChannelExec channel, ScpFile scpFile) throws SshException, IOException {
-		channel.setCommand("scp -t " + scpFile.to());
-		try (SshChannel sshChannel = new SshChannel(channel)) {
-			File file = scpFile.toFile();
-			sendModifiedTime(file, sshChannel);
-			sendFileSize(file, sshChannel);
-			sendFileContent(file, sshChannel);
+	private List<ScpResult> sendChanged() {
+		ScpManifest sent;
+		try {
+			sent = ScpManifest.load(manifest);
+		} catch (IOException ex) {
+			// Nothing can be told unchanged or recorded, so nothing is sent
+			return failAll(new SshException(ex));
+		}
+		List<String> locals = new ArrayList<>(files.size());
+		List<String> remotes = new ArrayList<>(files.size() * 2);
+		for (ScpFile file : files) {
+			if (!file.recursive()) {
+				locals.add(file.from());
+				// Remote side is not known to be a file or a directory, scp puts file inside one
+				remotes.add(file.to());
+				remotes.add(insideDirectory(file));
+			}
+		}
+		Map<String, ScpManifest.Stamp> stamps = sent.stamps(locals);
+		List<Callable<Map<String, String>>> lookups = new ArrayList<>(addresses.size());
+		for (String address : addresses) {
+			lookups.add(() -> remoteDigests(address, remotes));
+		}
+		List<Map<String, String>> remoteDigests = Transfers.run(lookups, parallelism);
+
+		ScpResult[] results = new ScpResult[addresses.size() * files.size()];
+		List<Transfer> changed = new ArrayList<>();
+		List<Integer> changedAt = new ArrayList<>();
+		int i = 0;
+		for (int a = 0; a < addresses.size(); a++) {
+			String address = addresses.get(a);
+			for (ScpFile file : files) {
+				ScpManifest.Stamp stamp = file.recursive() ? null : stamps.get(file.from());
+				if (stamp != null && stamp.digest.equals(remoteDigest(remoteDigests.get(a), file))) {
+					results[i] = ScpResult.unchanged(address, file);
+					listener.finished(results[i]);
+					sent.sent(address, file.to(), file.from(), stamp);
+				} else {
+					changed.add(new Transfer(address, file));
+					changedAt.add(i);
+				}
+				i++;
+			}
 		}
+		List<ScpResult> transferred = Transfers.run(changed, parallelism);
+		for (int t = 0; t < transferred.size(); t++) {
+			ScpResult result = transferred.get(t);
+			results[changedAt.get(t)] = result;
+			ScpManifest.Stamp stamp = stamps.get(result.from());
+			if (result.succeeded() && stamp != null && !changed.get(t).file.recursive()) {
+				sent.sent(result.host(), result.to(), result.from(), stamp);
+			}
+		}
+		try {
+			sent.save();
+		} catch (IOException ex) {
+			// Files got where they should, but next run cannot rely on what is recorded
+			SshException error = new SshException(ex);
+			for (int r = 0; r < results.length; r++) {
+				results[r] = results[r].failed(error);
+			}
+		}
+		return Collections.unmodifiableList(Arrays.asList(results));
 	}
 
-	private void disconnect(ChannelExec channel, Session session) {
-		if (Objects.nonNull(channel)) {
-			channel.disconnect();
-		}
-		if (Objects.nonNull(session)) {
-			session.disconnect();
+	private List<ScpResult> failAll(SshException error) {
+		List<ScpResult> results = new ArrayList<>(addresses.size() * files.size());
+		for (String address : addresses) {
+			for (ScpFile file : files) {
+				ScpResult result = new ScpResult(address, file, error, 0);
+				listener.finished(result);
+				results.add(result);
+			}
 		}
+		return Collections.unmodifiableList(results);
 	}
 
-	private Session createSession() throws JSchException {
-		JSch jsch = new JSch();
-		jsch.addIdentity(System.getProperty("user.home") + "/.ssh/id_rsa");
-		Session session = jsch.getSession(username, address);
-		session.setUserInfo(new ConsoleUserInfo(Sys.console()));
-		return session;
+	/**
+	 * @return digest of remote file, whether target path is the file or a directory it is in
+	 */
+	private static String remoteDigest(Map<String, String> digests, ScpFile file) {
+		String digest = digests.get(file.to());
+		return digest != null ? digest : digests.get(insideDirectory(file));
 	}
 
-	private static void sendModifiedTime(File file, SshChannel channel)
-			throws IOException, SshException {
-		long lastModified = file.lastModified() / 1000;
-		String command = String.format("T%d 0 %d 0\n", lastModified, lastModified);
-		channel.send(command);
+	private static String insideDirectory(ScpFile file) {
+		return file.to() + "/" + Paths.get(file.from()).getFileName();
 	}
 
-	private static void sendFileSize(File file, SshChannel channel)
-			throws IOException, SshException {
-		String command = String.format("C0644 %d %s \n", file.length(), file.getName());
-		channel.send(command);
+	/**
+	 * @return digests by remote path, empty if they cannot be taken so everything gets sent
+	 */
+	private Map<String, String> remoteDigests(String address, List<String> paths) {
+		if (paths.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		StringBuilder command = new StringBuilder("sha256sum --");
+		for (String path : paths) {
+			command.append(' ').append(ExecCommand.quote(path));
+		}
+		command.append(" 2>/dev/null");
+		try (SessionPool.Lease lease = sessions.lease(username, address)) {
+			ChannelExec channel = lease.channel("exec");
+			channel.setCommand(command.toString());
+			try (SshChannel sshChannel = new SshChannel(channel)) {
+				return ScpManifest.parseSums(Arrays.asList(sshChannel.readToEnd().split("\n")));
+			}
+		} catch (SshException | IOException ex) {
+			return Collections.emptyMap();
+		}
 	}
 
-	private void sendFileContent(File file, SshChannel channel)
-			throws IOException, SshException {
-		try (FileInputStream fis = new FileInputStream(file)) {
-			byte[] buf = new byte[1024];
-			while (true) {
-				int len = fis.read(buf, 0, buf.length);
-				if (len <= 0) {
-					break;
-				}
-				channel.write(buf);
+	private void sendFile(ChannelExec channel, ScpFile scpFile, ProgressMeter meter)
+			throws SshException, IOException {
+		// Preserve flag makes remote side apply times and modes we send
+		channel.setCommand((scpFile.recursive() ? "scp -r -p -t " : "scp -p -t ")
+				+ ExecCommand.quote(scpFile.to()));
+		try (SshChannel sshChannel = new SshChannel(channel);
+				ScpSource source = new ScpSource(sshChannel, bufferSize, meter)) {
+			meter.connected();
+			Path path = scpFile.toFile().toPath();
+			if (scpFile.recursive()) {
+				source.sendTree(path);
+			} else {
+				source.sendFile(path);
+			}
+			source.finish();
+			sshChannel.finish();
+		}
+	}
+
+	private final class Transfer implements Callable<ScpResult> {
+		private final String address;
+		private final ScpFile file;
+
+		Transfer(String address, ScpFile file) {
+			this.address = address;
+			this.file = file;
+		}
+
+		@Override
+		public ScpResult call() {
+			ProgressMeter meter = new ProgressMeter(address, listener, progressIntervalNanos);
+			SshException error = null;
+			try (SessionPool.Lease lease = sessions.lease(username, address)) {
+				sendFile(lease.channel("exec"), file, meter);
+			} catch (SshException ex) {
+				error = ex;
+			} catch (IOException | RuntimeException ex) {
+				error = new SshException(ex);
 			}
+			ScpResult result = meter.result(file, error);
+			listener.finished(result);
+			return result;
 		}
-		channel.send(0);
 	}
 }
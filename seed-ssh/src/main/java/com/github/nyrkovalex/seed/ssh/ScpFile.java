@@ -6,10 +6,16 @@ class ScpFile {
 
 	private final String from;
 	private final String to;
+	private final boolean recursive;
 
 	ScpFile(String from, String to) {
+		this(from, to, false);
+	}
+
+	ScpFile(String from, String to, boolean recursive) {
 		this.from = from;
 		this.to = to;
+		this.recursive = recursive;
 	}
 
 	public String from() {
@@ -20,6 +26,10 @@ class ScpFile {
 		return to;
 	}
 
+	boolean recursive() {
+		return recursive;
+	}
+
 	File toFile() {
 		return new File(from());
 	}
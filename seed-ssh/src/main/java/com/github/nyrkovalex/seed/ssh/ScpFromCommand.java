@@ -0,0 +1,128 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import com.jcraft.jsch.ChannelExec;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Fetches files from a host, the counterpart of {@link ScpCommand}
+ */
+public class ScpFromCommand {
+
+	private String username;
+	private final List<ScpFile> files;
+	private final String address;
+	private final SessionPool sessions;
+	private int bufferSize = FileSender.DEFAULT_BUFFER_SIZE;
+	private int parallelism = 1;
+
+	ScpFromCommand(String address, SessionPool sessions) {
+		this.files = new ArrayList<>();
+		this.address = address;
+		this.sessions = sessions;
+	}
+
+	/**
+	 * Adds a remote file to fetch. If <code>to</code> is an existing local directory the file is
+	 * put inside of it.
+	 *
+	 * @param from remote path
+	 * @param to local path
+	 * @return this command
+	 */
+	public ScpFromCommand file(String from, String to) {
+		this.files.add(new ScpFile(from, to));
+		return this;
+	}
+
+	/**
+	 * Adds a remote directory to fetch with everything in it
+	 *
+	 * @param from remote path
+	 * @param to local path
+	 * @return this command
+	 */
+	public ScpFromCommand directory(String from, String to) {
+		this.files.add(new ScpFile(from, to, true));
+		return this;
+	}
+
+	public ScpFromCommand asUser(String username) {
+		this.username = username;
+		return this;
+	}
+
+	public ScpFromCommand bufferSize(int bufferSize) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("Buffer size must be positive");
+		}
+		this.bufferSize = bufferSize;
+		return this;
+	}
+
+	public ScpFromCommand parallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Fetches every file and fails if any of them could not be fetched
+	 *
+	 * @throws SshException first failure, other ones are attached as suppressed
+	 */
+	public void run() throws SshException {
+		Transfers.throwFailures(fetch());
+	}
+
+	/**
+	 * Fetches every file, a failed transfer does not stop the other ones
+	 *
+	 * @return one result per file in the order added
+	 */
+	public List<ScpResult> fetch() {
+		List<Transfer> transfers = new ArrayList<>(files.size());
+		for (ScpFile file : files) {
+			transfers.add(new Transfer(file));
+		}
+		return Transfers.run(transfers, parallelism);
+	}
+
+	private void fetchFile(ChannelExec channel, ScpFile scpFile)
+			throws SshException, IOException {
+		channel.setCommand((scpFile.recursive() ? "scp -r -p -f " : "scp -p -f ")
+				+ ExecCommand.quote(scpFile.from()));
+		try (SshChannel sshChannel = new SshChannel(channel)) {
+			new ScpSink(sshChannel, bufferSize).receive(Paths.get(scpFile.to()));
+			sshChannel.finish();
+		}
+	}
+
+	private final class Transfer implements Callable<ScpResult> {
+		private final ScpFile file;
+
+		Transfer(ScpFile file) {
+			this.file = file;
+		}
+
+		@Override
+		public ScpResult call() {
+			long started = System.nanoTime();
+			SshException error = null;
+			try (SessionPool.Lease lease = sessions.lease(username, address)) {
+				fetchFile(lease.channel("exec"), file);
+			} catch (SshException ex) {
+				error = ex;
+			} catch (IOException | RuntimeException ex) {
+				error = new SshException(ex);
+			}
+			return new ScpResult(address, file, error, System.nanoTime() - started);
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package com.github.nyrkovalex.seed.ssh;
+
+/**
+ * Receives progress of an {@link ScpCommand}. Methods are called on transferring threads, so
+ * with parallelism above one an implementation must be thread safe and should return quickly.
+ */
+public interface ScpListener {
+
+	/**
+	 * Called at most once per progress interval while a file is being sent and once when it is
+	 * done
+	 *
+	 * @param progress state of file being sent
+	 */
+	default void progress(ScpProgress progress) {
+	}
+
+	/**
+	 * Called once per file and host after transfer ends, successful or not
+	 *
+	 * @param result transfer outcome
+	 */
+	default void finished(ScpResult result) {
+	}
+}
@@ -0,0 +1,188 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Remembers what was sent where: for every host and remote path the local file it came from, its
+ * size, modification time and SHA-256 digest. Stored as a tab separated text file.
+ * </p>
+ * <p>
+ * Local digests are taken from the manifest while size and modification time of a file stay the
+ * same, so unchanged files are not read again. Files needing a digest are hashed in parallel.
+ * </p>
+ */
+class ScpManifest {
+
+	private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+	private final Path path;
+	private final Map<String, Entry> entries;
+
+	private ScpManifest(Path path, Map<String, Entry> entries) {
+		this.path = path;
+		this.entries = entries;
+	}
+
+	static ScpManifest load(Path path) throws IOException {
+		Map<String, Entry> entries = new LinkedHashMap<>();
+		if (Files.exists(path)) {
+			for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+				String[] parts = line.split("\t");
+				if (parts.length != 6) {
+					continue;
+				}
+				try {
+					Entry entry = new Entry(parts[0], parts[1], parts[2], new Stamp(
+							Long.parseLong(parts[3]), Long.parseLong(parts[4]), parts[5]));
+					entries.put(key(entry.address, entry.remote), entry);
+				} catch (NumberFormatException ex) {
+					// Damaged line only costs a rehash
+				}
+			}
+		}
+		return new ScpManifest(path, entries);
+	}
+
+	/**
+	 * Size, modification time and digest of given local files, missing for ones that are not
+	 * regular files or cannot be read
+	 */
+	Map<String, Stamp> stamps(Collection<String> localPaths) {
+		Map<String, Stamp> known = new HashMap<>();
+		synchronized (this) {
+			for (Entry entry : entries.values()) {
+				known.put(entry.local, entry.stamp);
+			}
+		}
+		Map<String, Stamp> stamps = new ConcurrentHashMap<>();
+		Set<String> distinct = new HashSet<>(localPaths);
+		distinct.parallelStream().forEach(local -> {
+			Stamp stamp = stamp(Paths.get(local), known.get(local));
+			if (stamp != null) {
+				stamps.put(local, stamp);
+			}
+		});
+		return stamps;
+	}
+
+	synchronized void sent(String address, String remote, String local, Stamp stamp) {
+		entries.put(key(address, remote), new Entry(address, remote, local, stamp));
+	}
+
+	synchronized void save() throws IOException {
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+			for (Entry entry : entries.values()) {
+				out.write(String.join("\t", entry.address, entry.remote, entry.local,
+						Long.toString(entry.stamp.size), Long.toString(entry.stamp.modified),
+						entry.stamp.digest));
+				out.newLine();
+			}
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Parses output of <code>sha256sum</code>: digest, two separator characters and file name
+	 */
+	static Map<String, String> parseSums(List<String> lines) {
+		Map<String, String> sums = new HashMap<>();
+		for (String line : lines) {
+			if (line.length() > 66 && line.charAt(64) == ' ') {
+				sums.put(line.substring(66), line.substring(0, 64));
+			}
+		}
+		return sums;
+	}
+
+	private static Stamp stamp(Path file, Stamp known) {
+		try {
+			BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+			if (!attrs.isRegularFile()) {
+				return null;
+			}
+			long size = attrs.size();
+			long modified = attrs.lastModifiedTime().toMillis();
+			if (known != null && known.size == size && known.modified == modified) {
+				return known;
+			}
+			return new Stamp(size, modified, sha256(file));
+		} catch (IOException ex) {
+			return null;
+		}
+	}
+
+	static String sha256(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+		StringBuilder hex = new StringBuilder(64);
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	private static String key(String address, String remote) {
+		return address + '\t' + remote;
+	}
+
+	static final class Stamp {
+		final long size;
+		final long modified;
+		final String digest;
+
+		private Stamp(long size, long modified, String digest) {
+			this.size = size;
+			this.modified = modified;
+			this.digest = digest;
+		}
+	}
+
+	private static final class Entry {
+		final String address;
+		final String remote;
+		final String local;
+		final Stamp stamp;
+
+		Entry(String address, String remote, String local, Stamp stamp) {
+			this.address = address;
+			this.remote = remote;
+			this.local = local;
+			this.stamp = stamp;
+		}
+	}
+}
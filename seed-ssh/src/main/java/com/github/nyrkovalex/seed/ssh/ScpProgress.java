@@ -0,0 +1,84 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import java.time.Duration;
+
+/**
+ * Snapshot of a file being sent to a host. When a directory is sent there is one per file in it.
+ */
+public class ScpProgress {
+
+	private final String host;
+	private final String file;
+	private final long size;
+	private final long sent;
+	private final long nanos;
+	private final double bytesPerSecond;
+	private final boolean done;
+
+	ScpProgress(String host, String file, long size, long sent, long nanos,
+			double bytesPerSecond, boolean done) {
+		this.host = host;
+		this.file = file;
+		this.size = size;
+		this.sent = sent;
+		this.nanos = nanos;
+		this.bytesPerSecond = bytesPerSecond;
+		this.done = done;
+	}
+
+	public String host() {
+		return host;
+	}
+
+	/**
+	 * @return local path of file being sent
+	 */
+	public String file() {
+		return file;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return bytes of file content written to the channel so far
+	 */
+	public long sent() {
+		return sent;
+	}
+
+	/**
+	 * @return time since file header was sent
+	 */
+	public Duration elapsed() {
+		return Duration.ofNanos(nanos);
+	}
+
+	/**
+	 * @return bytes per second since previous progress report of this file
+	 */
+	public double throughput() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * @return bytes per second since file header was sent
+	 */
+	public double averageThroughput() {
+		return nanos == 0 ? 0 : sent * 1e9 / nanos;
+	}
+
+	/**
+	 * @return true if whole file content is sent
+	 */
+	public boolean done() {
+		return done;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s -> %s %d/%d bytes %.0f B/s", file, host, sent, size,
+				averageThroughput());
+	}
+}
@@ -0,0 +1,118 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Outcome of sending one file to one host
+ */
+public class ScpResult {
+
+	private final String host;
+	private final ScpFile file;
+	private final SshException error;
+	private final long nanos;
+	private final long handshakeNanos;
+	private final long bytes;
+	private final boolean skipped;
+
+	ScpResult(String host, ScpFile file, SshException error, long nanos) {
+		this(host, file, error, nanos, 0, 0, false);
+	}
+
+	ScpResult(String host, ScpFile file, SshException error, long nanos, long handshakeNanos,
+			long bytes) {
+		this(host, file, error, nanos, handshakeNanos, bytes, false);
+	}
+
+	private ScpResult(String host, ScpFile file, SshException error, long nanos,
+			long handshakeNanos, long bytes, boolean skipped) {
+		this.host = host;
+		this.file = file;
+		this.error = error;
+		this.nanos = nanos;
+		this.handshakeNanos = handshakeNanos;
+		this.bytes = bytes;
+		this.skipped = skipped;
+	}
+
+	static ScpResult unchanged(String host, ScpFile file) {
+		return new ScpResult(host, file, null, 0, 0, 0, true);
+	}
+
+	/**
+	 * @return same outcome failed with given error
+	 */
+	ScpResult failed(SshException error) {
+		return new ScpResult(host, file, error, nanos, handshakeNanos, bytes, skipped);
+	}
+
+	public String host() {
+		return host;
+	}
+
+	public String from() {
+		return file.from();
+	}
+
+	public String to() {
+		return file.to();
+	}
+
+	public boolean succeeded() {
+		return error == null;
+	}
+
+	/**
+	 * @return true if file was not sent since remote copy is already the same
+	 */
+	public boolean skipped() {
+		return skipped;
+	}
+
+	public Optional<SshException> error() {
+		return Optional.ofNullable(error);
+	}
+
+	/**
+	 * @return total time spent on this file including {@link #handshake()}
+	 */
+	public Duration elapsed() {
+		return Duration.ofNanos(nanos);
+	}
+
+	/**
+	 * @return time taken to lease a session and start remote scp command
+	 */
+	public Duration handshake() {
+		return Duration.ofNanos(handshakeNanos);
+	}
+
+	/**
+	 * @return time spent sending after {@link #handshake()}
+	 */
+	public Duration transfer() {
+		return Duration.ofNanos(nanos - handshakeNanos);
+	}
+
+	/**
+	 * @return bytes of file content sent, zero for fetched files
+	 */
+	public long bytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return bytes per second over {@link #transfer()} time
+	 */
+	public double throughput() {
+		long transfer = nanos - handshakeNanos;
+		return transfer <= 0 ? 0 : bytes * 1e9 / transfer;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s -> %s:%s %s", from(), host, to(),
+				skipped ? "UNCHANGED" : succeeded() ? "OK" : "FAILED: " + error.getMessage());
+	}
+}
@@ -0,0 +1,248 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Sink side of scp protocol talking to a remote <code>scp -f</code>. File content is written to
+ * disk at increasing positions of a {@link FileChannel} sized upfront to the announced length. A
+ * connection dropping mid-file truncates it back to what was received, so a partial file never
+ * has the size of a complete one, and a file remote side reports as failed is deleted.
+ * </p>
+ * <p>
+ * Names sent by remote side are taken as plain names only, anything trying to reach outside
+ * of the target is rejected.
+ * </p>
+ */
+class ScpSink {
+
+	private final SshChannel channel;
+	private final int bufferSize;
+	private final List<String> warnings = new ArrayList<>();
+
+	ScpSink(SshChannel channel, int bufferSize) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("Buffer size must be positive");
+		}
+		this.channel = channel;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Receives whatever remote side sends: if target is an existing directory things are put
+	 * inside of it, otherwise a file or a directory tree is created as target itself
+	 *
+	 * @throws SshException if remote side reports an error or breaks protocol
+	 */
+	void receive(Path target) throws IOException, SshException {
+		Deque<Directory> dirs = new ArrayDeque<>();
+		FileTime[] times = null;
+		ack();
+		while (true) {
+			int code = channel.read();
+			if (code < 0) {
+				break;
+			}
+			if (code == 1 || code == 2) {
+				String message = readLine();
+				if (code == 2) {
+					throw new SshException(message);
+				}
+				warnings.add(message);
+				continue;
+			}
+			String record = (char) code + readLine();
+			switch (record.charAt(0)) {
+			case 'T':
+				times = times(record);
+				ack();
+				break;
+			case 'C':
+				receiveFile(record, destination(target, dirs, record), times);
+				times = null;
+				break;
+			case 'D':
+				Path dir = destination(target, dirs, record);
+				Files.createDirectories(dir);
+				dirs.push(new Directory(dir, mode(record), times));
+				times = null;
+				ack();
+				break;
+			case 'E':
+				if (dirs.isEmpty()) {
+					throw new SshException("Unexpected end of directory");
+				}
+				dirs.pop().restore();
+				ack();
+				break;
+			default:
+				throw new SshException("Unexpected record: " + record);
+			}
+		}
+		if (!warnings.isEmpty()) {
+			throw new SshException(String.join("\n", warnings));
+		}
+	}
+
+	private void receiveFile(String record, Path file, FileTime[] times)
+			throws IOException, SshException {
+		String[] parts = fields(record);
+		long size;
+		try {
+			size = Long.parseLong(parts[1]);
+		} catch (NumberFormatException ex) {
+			throw new SshException("Bad file size in " + record);
+		}
+		ack();
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.setLength(size);
+			write(raf.getChannel(), size, file);
+		}
+		int status = channel.read();
+		if (status != 0) {
+			// Remote side pads what it could not read, content is not worth keeping
+			Files.deleteIfExists(file);
+			throw new SshException("Transfer of " + file + " failed: " + readLine());
+		}
+		restore(file, mode(record), times);
+		ack();
+	}
+
+	private void write(FileChannel out, long size, Path file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(bufferSize, Math.max(size, 1)));
+		byte[] array = buffer.array();
+		long position = 0;
+		try {
+			while (position < size) {
+				int read = channel.read(array, 0, (int) Math.min(array.length, size - position));
+				if (read < 0) {
+					throw new EOFException("Connection closed after " + position + " of " + size
+							+ " bytes of " + file);
+				}
+				buffer.clear();
+				buffer.limit(read);
+				while (buffer.hasRemaining()) {
+					position += out.write(buffer, position);
+				}
+			}
+		} catch (IOException ex) {
+			// Preallocated tail must not pass for received content
+			try {
+				out.truncate(position);
+			} catch (IOException truncateEx) {
+				ex.addSuppressed(truncateEx);
+			}
+			throw ex;
+		}
+	}
+
+	private void ack() throws IOException {
+		channel.write(new byte[] { 0 });
+		channel.flush();
+	}
+
+	private String readLine() throws IOException {
+		StringBuilder line = new StringBuilder();
+		int next;
+		while ((next = channel.read()) >= 0 && next != '\n') {
+			line.append((char) next);
+		}
+		return line.toString();
+	}
+
+	private static Path destination(Path target, Deque<Directory> dirs, String record)
+			throws SshException {
+		String name = fields(record)[2];
+		if (name.isEmpty() || name.equals(".") || name.equals("..") || name.contains("/")) {
+			throw new SshException("Refusing unsafe name in " + record);
+		}
+		if (!dirs.isEmpty()) {
+			return dirs.peek().path.resolve(name);
+		}
+		return Files.isDirectory(target) ? target.resolve(name) : target;
+	}
+
+	/**
+	 * Splits <code>C0644 1234 name</code> into mode, size and name which may contain spaces
+	 */
+	private static String[] fields(String record) throws SshException {
+		String[] parts = record.substring(1).split(" ", 3);
+		if (parts.length != 3) {
+			throw new SshException("Malformed record: " + record);
+		}
+		return parts;
+	}
+
+	private static FileTime[] times(String record) throws SshException {
+		String[] parts = record.substring(1).split(" ");
+		try {
+			return new FileTime[] {
+					FileTime.from(Long.parseLong(parts[0]), TimeUnit.SECONDS),
+					FileTime.from(Long.parseLong(parts[2]), TimeUnit.SECONDS)
+			};
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+			throw new SshException("Malformed record: " + record);
+		}
+	}
+
+	private static int mode(String record) throws SshException {
+		try {
+			return Integer.parseInt(fields(record)[0], 8);
+		} catch (NumberFormatException ex) {
+			throw new SshException("Bad mode in " + record);
+		}
+	}
+
+	private static void restore(Path path, int mode, FileTime[] times) throws IOException {
+		Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+		for (PosixFilePermission permission : PosixFilePermission.values()) {
+			if ((mode & (1 << (8 - permission.ordinal()))) != 0) {
+				permissions.add(permission);
+			}
+		}
+		try {
+			Files.setPosixFilePermissions(path, permissions);
+		} catch (UnsupportedOperationException ex) {
+			// Not a POSIX file system
+		}
+		if (times != null) {
+			Files.getFileAttributeView(path, BasicFileAttributeView.class)
+					.setTimes(times[0], times[1], null);
+		}
+	}
+
+	private static final class Directory {
+		final Path path;
+		final int mode;
+		final FileTime[] times;
+
+		Directory(Path path, int mode, FileTime[] times) {
+			this.path = path;
+			this.mode = mode;
+			this.times = times;
+		}
+
+		/**
+		 * Directory times change while it is filled, so they are set once it is complete
+		 */
+		void restore() throws IOException {
+			ScpSink.restore(path, mode, times);
+		}
+	}
+}
@@ -0,0 +1,266 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Source side of scp protocol talking to a remote <code>scp -t</code>. A separate thread reads
+ * acknowledgements and matches each against the record it was sent for. Times records and file
+ * contents are not waited for, file and directory headers are: remote side answers them once the
+ * file is opened or the directory is made, and reads whatever follows a rejected one as the next
+ * record, so a body or children must not go out before the header is accepted.
+ * </p>
+ * <p>
+ * A warning from remote side, such as a rejected file or directory, fails the transfer once
+ * everything else is sent. A fatal error stops it as soon as it is read.
+ * </p>
+ */
+class ScpSource implements AutoCloseable {
+
+	private static final Ack END = new Ack("end of transfer", false);
+
+	private final SshChannel channel;
+	private final FileSender sender;
+	private final ProgressMeter meter;
+	private final BlockingQueue<Ack> expected = new LinkedBlockingQueue<>();
+	private final BlockingQueue<Boolean> answers = new LinkedBlockingQueue<>();
+	private final List<String> warnings = new ArrayList<>();
+	private final Thread reader;
+	private volatile SshException fatal;
+
+	ScpSource(SshChannel channel, int bufferSize, ProgressMeter meter) {
+		this.channel = channel;
+		this.sender = new FileSender(bufferSize);
+		this.meter = meter;
+		// Remote side signals it is ready before reading anything
+		expected.add(new Ack("start of transfer", false));
+		this.reader = new Thread(this::readAcks, "seed-ssh-scp-acks");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Sends a regular file, remote command should be <code>scp -t</code>
+	 */
+	void sendFile(Path file) throws IOException, SshException {
+		BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+		file(file, attrs);
+	}
+
+	/**
+	 * Sends a directory with everything in it, remote command should be <code>scp -r -t</code>.
+	 * Symbolic links are followed like scp does.
+	 */
+	void sendTree(Path root) throws IOException, SshException {
+		Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+				new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+							throws IOException {
+						ensureRunning();
+						times(dir, attrs);
+						// Rejected directory gets no end record either, remote side never entered it
+						return accepted(String.format("D%s 0 %s\n", mode(dir, "0755"), name(dir)))
+								? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+					}
+
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+							throws IOException {
+						if (attrs.isRegularFile()) {
+							file(file, attrs);
+						}
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFileFailed(Path file, IOException ex) {
+						synchronized (warnings) {
+							warnings.add(file + ": " + ex);
+						}
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult postVisitDirectory(Path dir, IOException ex)
+							throws IOException {
+						record("E\n");
+						return FileVisitResult.CONTINUE;
+					}
+				});
+	}
+
+	/**
+	 * Waits for all acknowledgements
+	 *
+	 * @throws SshException if remote side reported any errors
+	 */
+	void finish() throws IOException, SshException {
+		expected.add(END);
+		channel.flush();
+		try {
+			reader.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SshException(ex);
+		}
+		ensureRunning();
+		if (!warnings.isEmpty()) {
+			throw new SshException(String.join("\n", warnings));
+		}
+	}
+
+	@Override
+	public void close() {
+		reader.interrupt();
+	}
+
+	private void file(Path file, BasicFileAttributes attrs) throws IOException {
+		ensureRunning();
+		long size = attrs.size();
+		times(file, attrs);
+		if (!accepted(String.format("C%s %d %s\n", mode(file, "0644"), size, name(file)))) {
+			return;
+		}
+		sender.send(file, size, meter.sink(file, size, channel::write));
+		expected.add(new Ack("content of " + file, false));
+		channel.write(new byte[] { 0 });
+		meter.done();
+	}
+
+	private void times(Path path, BasicFileAttributes attrs) throws IOException {
+		long modified = attrs.lastModifiedTime().to(TimeUnit.SECONDS);
+		long accessed = attrs.lastAccessTime().to(TimeUnit.SECONDS);
+		record(String.format("T%d 0 %d 0\n", modified, accessed));
+	}
+
+	private void record(String record) throws IOException {
+		expected.add(new Ack(record.trim(), false));
+		channel.write(record.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Sends a record and waits for remote side to answer it
+	 *
+	 * @return false if remote side rejected it with a warning
+	 */
+	private boolean accepted(String record) throws IOException {
+		expected.add(new Ack(record.trim(), true));
+		channel.write(record.getBytes(StandardCharsets.UTF_8));
+		channel.flush();
+		boolean accepted;
+		try {
+			accepted = answers.take();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + record.trim());
+		}
+		ensureRunning();
+		return accepted;
+	}
+
+	private void ensureRunning() throws IOException {
+		if (fatal != null) {
+			throw new IOException("Remote side failed", fatal);
+		}
+	}
+
+	private void readAcks() {
+		try {
+			while (true) {
+				Ack ack = expected.take();
+				if (ack == END) {
+					return;
+				}
+				int code = channel.read();
+				if (code == 0) {
+					answer(ack, true);
+					continue;
+				}
+				if (code < 0) {
+					fatal = new SshException("Channel closed before " + ack.record
+							+ " was acknowledged");
+					return;
+				}
+				String message = ack.record + ": " + readLine();
+				if (code == 1) {
+					synchronized (warnings) {
+						warnings.add(message);
+					}
+					answer(ack, false);
+				} else {
+					fatal = new SshException(message);
+					return;
+				}
+			}
+		} catch (InterruptedException ex) {
+			// Transfer aborted
+		} catch (IOException ex) {
+			fatal = new SshException(ex);
+		} finally {
+			// Sender may be waiting for an answer that is not coming, it checks fatal next
+			answers.add(false);
+		}
+	}
+
+	private void answer(Ack ack, boolean accepted) {
+		if (ack.awaited) {
+			answers.add(accepted);
+		}
+	}
+
+	private String readLine() throws IOException {
+		StringBuilder line = new StringBuilder();
+		int next;
+		while ((next = channel.read()) >= 0 && next != '\n') {
+			line.append((char) next);
+		}
+		return line.toString();
+	}
+
+	private static final class Ack {
+		final String record;
+		final boolean awaited;
+
+		Ack(String record, boolean awaited) {
+			this.record = record;
+			this.awaited = awaited;
+		}
+	}
+
+	private static String name(Path path) {
+		Path name = path.getFileName();
+		return name == null ? path.toString() : name.toString();
+	}
+
+	private static String mode(Path path, String fallback) {
+		try {
+			Set<PosixFilePermission> permissions =
+					Files.readAttributes(path, PosixFileAttributes.class).permissions();
+			int mode = 0;
+			for (PosixFilePermission permission : permissions) {
+				mode |= 1 << (8 - permission.ordinal());
+			}
+			return String.format("%04o", mode);
+		} catch (UnsupportedOperationException | IOException ex) {
+			return fallback;
+		}
+	}
+}
@@ -0,0 +1,359 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.UserInfo;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Keeps SSH sessions open between commands, keyed by <code>user@host:port</code>. All sessions
+ * share one {@link JSch} instance so identity is loaded once.
+ * </p>
+ * <p>
+ * Every lease takes a channel slot of a session, a new session to the same host is opened once
+ * all existing ones have <code>maxChannels</code> leased. Sessions with no leases are disconnected
+ * after being idle for <code>idleTimeout</code>, dropped ones are noticed and replaced on lease.
+ * </p>
+ * <p>
+ * Handshakes happen outside of the host lock: a session being connected holds its place in the
+ * pool, leases taking its other slots wait for it while the rest of the host is not held up.
+ * </p>
+ */
+class SessionPool implements Ssh.Sessions {
+
+	private static final long MIN_EVICTION_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final JSch jsch = new JSch();
+	private final String identity;
+	private final Supplier<UserInfo> userInfo;
+	private final Properties config;
+	private final int keepAliveMillis;
+	private final int maxChannels;
+	private final long idleTimeoutNanos;
+	private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService evictor;
+	private boolean identityLoaded;
+	private volatile boolean closed;
+
+	SessionPool(String identity, Supplier<UserInfo> userInfo, Properties config,
+			Duration keepAlive, int maxChannels, Duration idleTimeout) {
+		this.identity = identity;
+		this.userInfo = userInfo;
+		this.config = config;
+		this.keepAliveMillis = (int) keepAlive.toMillis();
+		this.maxChannels = maxChannels;
+		this.idleTimeoutNanos = idleTimeout.toNanos();
+		this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "seed-ssh-session-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = Math.max(idleTimeoutNanos / 2, MIN_EVICTION_PERIOD_NANOS);
+		evictor.scheduleWithFixedDelay(this::evict, period, period, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public ScpCommand scpTo(String address) {
+		return new ScpCommand(Collections.singletonList(address), this);
+	}
+
+	@Override
+	public ScpCommand scpToAll(Collection<String> addresses) {
+		return new ScpCommand(new ArrayList<>(addresses), this);
+	}
+
+	@Override
+	public ScpFromCommand scpFrom(String address) {
+		return new ScpFromCommand(address, this);
+	}
+
+	@Override
+	public SftpCommand sftpTo(String address) {
+		return new SftpCommand(address, this);
+	}
+
+	@Override
+	public ExecCommand exec(String address, String command) {
+		return new ExecCommand(Collections.singletonList(address), command, this);
+	}
+
+	@Override
+	public ExecCommand execOnAll(Collection<String> addresses, String command) {
+		return new ExecCommand(new ArrayList<>(addresses), command, this);
+	}
+
+	@Override
+	public int open() {
+		int open = 0;
+		for (Host host : hosts.values()) {
+			synchronized (host) {
+				for (Pooled pooled : host.sessions) {
+					if (pooled.session != null) {
+						open++;
+					}
+				}
+			}
+		}
+		return open;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		evictor.shutdownNow();
+		for (Host host : hosts.values()) {
+			synchronized (host) {
+				// Sessions still being connected are dropped once connected
+				host.sessions.stream()
+						.filter(s -> s.session != null)
+						.forEach(s -> s.session.disconnect());
+				host.sessions.clear();
+			}
+		}
+	}
+
+	/**
+	 * Takes a channel slot of a session to given host, connecting a new session if needed
+	 *
+	 * @param user user name, current system user if null
+	 * @param address host name optionally followed by <code>:port</code>
+	 * @return lease to open a channel with and close when done
+	 * @throws SshException if session cannot be established
+	 */
+	Lease lease(String user, String address) throws SshException {
+		String login = user == null ? System.getProperty("user.name") : user;
+		String hostName = hostName(address);
+		int port = port(address);
+		Host host = hosts.computeIfAbsent(login + "@" + hostName + ":" + port, k -> new Host());
+		while (true) {
+			Pooled placeholder;
+			synchronized (host) {
+				if (closed) {
+					throw new SshException("Session pool is closed");
+				}
+				Pooled pooled = available(host);
+				if (pooled != null) {
+					awaitConnected(host, pooled);
+					if (pooled.session != null) {
+						return new Lease(host, pooled);
+					}
+					// Whoever was connecting it failed, look again
+					continue;
+				}
+				placeholder = new Pooled();
+				placeholder.leased++;
+				host.sessions.add(placeholder);
+			}
+			// Handshake may take long, host is not held up meanwhile
+			return new Lease(host, establish(host, placeholder, login, hostName, port));
+		}
+	}
+
+	/**
+	 * Takes a channel slot of a session, connected or being connected. Must be called holding
+	 * host.
+	 *
+	 * @return session with a slot taken, null if all are full
+	 */
+	private Pooled available(Host host) {
+		Iterator<Pooled> it = host.sessions.iterator();
+		while (it.hasNext()) {
+			Pooled pooled = it.next();
+			if (pooled.session != null && !pooled.session.isConnected()) {
+				it.remove();
+				continue;
+			}
+			if (pooled.leased < maxChannels) {
+				pooled.leased++;
+				return pooled;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Waits for another lease to finish connecting a session. Must be called holding host.
+	 */
+	private static void awaitConnected(Host host, Pooled pooled) throws SshException {
+		try {
+			while (pooled.connecting) {
+				host.wait();
+			}
+		} catch (InterruptedException ex) {
+			pooled.leased--;
+			Thread.currentThread().interrupt();
+			throw new SshException("Interrupted while waiting for a session");
+		}
+	}
+
+	/**
+	 * Connects a placeholder session and makes it available to other leases, or drops it if
+	 * connection fails
+	 */
+	private Pooled establish(Host host, Pooled placeholder, String user, String hostName,
+			int port)
+			throws SshException {
+		Session session = null;
+		boolean published = false;
+		try {
+			session = connect(user, hostName, port);
+		} finally {
+			synchronized (host) {
+				placeholder.connecting = false;
+				if (session != null && !closed) {
+					placeholder.session = session;
+					published = true;
+				} else {
+					host.sessions.remove(placeholder);
+				}
+				host.notifyAll();
+			}
+		}
+		if (!published) {
+			session.disconnect();
+			throw new SshException("Session pool is closed");
+		}
+		return placeholder;
+	}
+
+	private Session connect(String user, String host, int port) throws SshException {
+		try {
+			loadIdentity();
+			Session session = jsch.getSession(user, host, port);
+			session.setConfig(config);
+			session.setUserInfo(userInfo.get());
+			if (keepAliveMillis > 0) {
+				session.setServerAliveInterval(keepAliveMillis);
+			}
+			session.connect();
+			return session;
+		} catch (JSchException ex) {
+			throw new SshException(ex);
+		}
+	}
+
+	private synchronized void loadIdentity() throws JSchException {
+		if (identityLoaded || identity == null) {
+			return;
+		}
+		jsch.addIdentity(identity);
+		identityLoaded = true;
+	}
+
+	private void evict() {
+		long now = System.nanoTime();
+		for (Host host : hosts.values()) {
+			List<Pooled> expired = new ArrayList<>();
+			synchronized (host) {
+				Iterator<Pooled> it = host.sessions.iterator();
+				while (it.hasNext()) {
+					Pooled pooled = it.next();
+					if (pooled.session == null) {
+						continue;
+					}
+					boolean idle = pooled.leased == 0
+							&& now - pooled.releasedAt >= idleTimeoutNanos;
+					if (idle || !pooled.session.isConnected()) {
+						it.remove();
+						expired.add(pooled);
+					}
+				}
+			}
+			expired.forEach(p -> p.session.disconnect());
+		}
+	}
+
+	private static String hostName(String address) {
+		int colon = portColon(address);
+		return colon < 0 ? address : address.substring(0, colon);
+	}
+
+	private static int port(String address) {
+		int colon = portColon(address);
+		return colon < 0 ? 22 : Integer.parseInt(address.substring(colon + 1));
+	}
+
+	/**
+	 * Bare IPv6 addresses have several colons and no port
+	 */
+	private static int portColon(String address) {
+		int colon = address.indexOf(':');
+		return colon == address.lastIndexOf(':') ? colon : -1;
+	}
+
+	private static final class Host {
+		final List<Pooled> sessions = new ArrayList<>();
+	}
+
+	/**
+	 * Pooled session, a placeholder with no session while being connected. Guarded by its host.
+	 */
+	private static final class Pooled {
+		Session session;
+		boolean connecting = true;
+		int leased;
+		long releasedAt = System.nanoTime();
+	}
+
+	/**
+	 * Channel slot of a pooled session. Channels opened through a lease are disconnected when it
+	 * is closed.
+	 */
+	static final class Lease implements AutoCloseable {
+		private final Host host;
+		private final Pooled pooled;
+		private final List<Channel> channels = new ArrayList<>(1);
+		private boolean released;
+
+		private Lease(Host host, Pooled pooled) {
+			this.host = host;
+			this.pooled = pooled;
+		}
+
+		Session session() {
+			return pooled.session;
+		}
+
+		@SuppressWarnings("unchecked")
+		<T extends Channel> T channel(String type) throws SshException {
+			Objects.requireNonNull(type);
+			try {
+				T channel = (T) pooled.session.openChannel(type);
+				channels.add(channel);
+				return channel;
+			} catch (JSchException ex) {
+				throw new SshException(ex);
+			}
+		}
+
+		@Override
+		public void close() {
+			if (released) {
+				return;
+			}
+			released = true;
+			channels.forEach(Channel::disconnect);
+			synchronized (host) {
+				pooled.leased--;
+				pooled.releasedAt = System.nanoTime();
+			}
+		}
+	}
+}
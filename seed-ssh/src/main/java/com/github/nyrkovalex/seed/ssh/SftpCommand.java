@@ -0,0 +1,292 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Sends large files over SFTP. Every file is split into ranges that are written concurrently,
+ * each over its own channel, into a part file named after local file size, modification time and
+ * range offset. A part already on the remote side is resumed from its size, so a rerun after a
+ * dropped connection only sends what is missing. Parts left for another version of the file are
+ * removed before sending.
+ * </p>
+ * <p>
+ * Once all ranges are written parts are joined remotely, the result is checked against local
+ * SHA-256 digest and moved into place. Joining and checking need <code>cat</code>,
+ * <code>sha256sum</code> and <code>mv</code> on the remote host.
+ * </p>
+ */
+public class SftpCommand {
+
+	static final long DEFAULT_RANGE_SIZE = 64L * 1024 * 1024;
+
+	private String username;
+	private final List<ScpFile> files;
+	private final String address;
+	private final SessionPool sessions;
+	private long rangeSize = DEFAULT_RANGE_SIZE;
+	private int parallelism = 4;
+
+	SftpCommand(String address, SessionPool sessions) {
+		this.files = new ArrayList<>();
+		this.address = address;
+		this.sessions = sessions;
+	}
+
+	public SftpCommand file(String from, String to) {
+		this.files.add(new ScpFile(from, to));
+		return this;
+	}
+
+	public SftpCommand asUser(String username) {
+		this.username = username;
+		return this;
+	}
+
+	/**
+	 * Sets size of ranges files are split into, it is also the most a resume may have to resend
+	 * per range
+	 *
+	 * @param rangeSize range size in bytes
+	 * @return this command
+	 */
+	public SftpCommand rangeSize(long rangeSize) {
+		if (rangeSize < 1) {
+			throw new IllegalArgumentException("Range size must be positive");
+		}
+		this.rangeSize = rangeSize;
+		return this;
+	}
+
+	/**
+	 * Sets how many ranges of a file may be written at once, each one takes a channel of a pooled
+	 * session
+	 *
+	 * @param parallelism max number of concurrent ranges
+	 * @return this command
+	 */
+	public SftpCommand parallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Sends every file and fails if any of them could not be sent
+	 *
+	 * @throws SshException first failure, other ones are attached as suppressed
+	 */
+	public void run() throws SshException {
+		Transfers.throwFailures(send());
+	}
+
+	/**
+	 * Sends files one after another, a failed file does not stop the other ones. Its parts stay
+	 * on the remote side to be resumed by next run.
+	 *
+	 * @return one result per file in the order added
+	 */
+	public List<ScpResult> send() {
+		List<ScpResult> results = new ArrayList<>(files.size());
+		for (ScpFile file : files) {
+			results.add(upload(file));
+		}
+		return Collections.unmodifiableList(results);
+	}
+
+	private ScpResult upload(ScpFile file) {
+		long started = System.nanoTime();
+		AtomicLong sent = new AtomicLong();
+		ExecutorService hashing = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "seed-ssh-sftp-digest");
+			thread.setDaemon(true);
+			return thread;
+		});
+		SshException error;
+		try {
+			Path local = Paths.get(file.from());
+			Future<String> digest = hashing.submit(() -> ScpManifest.sha256(local));
+			BasicFileAttributes attrs = Files.readAttributes(local, BasicFileAttributes.class);
+			long size = attrs.size();
+			String version = size + "-" + attrs.lastModifiedTime().toMillis();
+			error = discardStale(file.to(), version);
+			List<Range> ranges = new ArrayList<>();
+			for (long offset = 0; offset < size || offset == 0; offset += rangeSize) {
+				ranges.add(new Range(local, file.to() + "." + version, offset,
+						Math.min(rangeSize, size - offset), sent));
+			}
+			if (error == null) {
+				error = failure(Transfers.run(ranges, parallelism));
+			}
+			if (error == null) {
+				error = assemble(file.to(), ranges, digest.get());
+			}
+		} catch (IOException ex) {
+			error = new SshException(ex);
+		} catch (ExecutionException ex) {
+			error = new SshException(ex.getCause());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			error = new SshException(ex);
+		} finally {
+			// Digest is of no use once a range failed, stop reading the file
+			hashing.shutdownNow();
+		}
+		return new ScpResult(address, file, error, System.nanoTime() - started, 0, sent.get());
+	}
+
+	/**
+	 * Joins parts into a temporary file, moves it into place if its digest matches
+	 */
+	private SshException assemble(String to, List<Range> ranges, String digest) {
+		String joined = to + ".joined";
+		StringBuilder parts = new StringBuilder();
+		for (Range range : ranges) {
+			parts.append(' ').append(ExecCommand.quote(range.part));
+		}
+		StringBuilder output = new StringBuilder();
+		ExecResult joining = exec("cat --" + parts + " > " + ExecCommand.quote(joined)
+				+ " && sha256sum -- " + ExecCommand.quote(joined), output);
+		if (!joining.succeeded()) {
+			return joining.error().orElse(new SshException("Could not join parts of " + to));
+		}
+		if (!output.toString().startsWith(digest)) {
+			exec("rm -f -- " + ExecCommand.quote(joined) + parts, output);
+			return new SshException(to + " does not match local file, parts are removed");
+		}
+		ExecResult moving = exec("mv -f -- " + ExecCommand.quote(joined) + " "
+				+ ExecCommand.quote(to) + " && rm -f --" + parts, output);
+		if (!moving.succeeded()) {
+			return moving.error().orElse(new SshException("Could not move " + joined + " to " + to));
+		}
+		return null;
+	}
+
+	/**
+	 * Removes parts of the target left by a run for another size or modification time of the
+	 * local file, resuming them would mix two versions
+	 */
+	private SshException discardStale(String to, String version) {
+		int slash = to.lastIndexOf('/');
+		String dir = slash < 0 ? "." : slash == 0 ? "/" : to.substring(0, slash);
+		String name = to.substring(slash + 1);
+		// Parts without a version are left by older releases
+		Pattern parts = Pattern.compile(Pattern.quote(name) + "\\.(\\d+-\\d+\\.)?\\d+\\.part");
+		String current = name + "." + version + ".";
+		try (SessionPool.Lease lease = sessions.lease(username, address)) {
+			ChannelSftp sftp = lease.channel("sftp");
+			sftp.connect();
+			for (Object entry : sftp.ls(dir)) {
+				String file = ((ChannelSftp.LsEntry) entry).getFilename();
+				if (parts.matcher(file).matches() && !file.startsWith(current)) {
+					sftp.rm(dir.endsWith("/") ? dir + file : dir + "/" + file);
+				}
+			}
+			return null;
+		} catch (SshException ex) {
+			return ex;
+		} catch (JSchException | SftpException ex) {
+			return new SshException(ex);
+		}
+	}
+
+	private ExecResult exec(String command, StringBuilder output) {
+		return new ExecCommand(Collections.singletonList(address), command, sessions)
+				.asUser(username)
+				.stdout((host, line) -> output.append(line).append('\n'))
+				.run()
+				.get(0);
+	}
+
+	private static SshException failure(List<SshException> errors) {
+		SshException err = null;
+		for (SshException cause : errors) {
+			if (cause == null) {
+				continue;
+			}
+			if (err == null) {
+				err = cause;
+			} else {
+				err.addSuppressed(cause);
+			}
+		}
+		return err;
+	}
+
+	private final class Range implements Callable<SshException> {
+		private final Path local;
+		private final String part;
+		private final long offset;
+		private final long length;
+		private final AtomicLong sent;
+
+		Range(Path local, String prefix, long offset, long length, AtomicLong sent) {
+			this.local = local;
+			this.part = prefix + "." + offset + ".part";
+			this.offset = offset;
+			this.length = length;
+			this.sent = sent;
+		}
+
+		@Override
+		public SshException call() {
+			try (SessionPool.Lease lease = sessions.lease(username, address);
+					FileChannel channel = FileChannel.open(local, StandardOpenOption.READ)) {
+				ChannelSftp sftp = lease.channel("sftp");
+				sftp.connect();
+				long written = remoteSize(sftp);
+				if (written > length) {
+					// Left by a run with other range size
+					sftp.rm(part);
+					written = -1;
+				}
+				if (written < length) {
+					long from = Math.max(written, 0);
+					sftp.put(new RangeInputStream(channel, offset + from, length - from, sent),
+							part, written > 0 ? ChannelSftp.APPEND : ChannelSftp.OVERWRITE);
+				}
+				return null;
+			} catch (SshException ex) {
+				return ex;
+			} catch (JSchException | SftpException | IOException | RuntimeException ex) {
+				return new SshException(ex);
+			}
+		}
+
+		/**
+		 * @return size of remote part, -1 if there is none
+		 */
+		private long remoteSize(ChannelSftp sftp) throws SftpException {
+			try {
+				return sftp.stat(part).getSize();
+			} catch (SftpException ex) {
+				if (ex.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+					return -1;
+				}
+				throw ex;
+			}
+		}
+	}
+}
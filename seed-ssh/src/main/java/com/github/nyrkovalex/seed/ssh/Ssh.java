@@ -1,12 +1,184 @@
 package com.github.nyrkovalex.seed.ssh;
 
+import com.github.nyrkovalex.seed.Sys;
+import com.jcraft.jsch.UserInfo;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.function.Supplier;
+
 public final class Ssh {
 
 	private Ssh() {
 	}
 
+	/**
+	 * Creates a command sending files over sessions of a shared pool
+	 *
+	 * @param url host to send files to
+	 * @return scp command
+	 */
 	public static ScpCommand scpTo(String url) {
-		return new ScpCommand(url);
+		return SharedSessions.INSTANCE.scpTo(url);
+	}
+
+	/**
+	 * Creates a command sending same files to every given host over sessions of a shared pool
+	 *
+	 * @param urls hosts to send files to
+	 * @return scp command
+	 */
+	public static ScpCommand scpToAll(Collection<String> urls) {
+		return SharedSessions.INSTANCE.scpToAll(urls);
+	}
+
+	/**
+	 * Creates a command fetching files from a host over sessions of a shared pool
+	 *
+	 * @param url host to fetch files from
+	 * @return scp command
+	 */
+	public static ScpFromCommand scpFrom(String url) {
+		return SharedSessions.INSTANCE.scpFrom(url);
+	}
+
+	/**
+	 * Creates a command sending large files over SFTP in resumable ranges over sessions of a
+	 * shared pool
+	 *
+	 * @param url host to send files to
+	 * @return sftp command
+	 */
+	public static SftpCommand sftpTo(String url) {
+		return SharedSessions.INSTANCE.sftpTo(url);
+	}
+
+	/**
+	 * Creates a command running a shell command on a host over sessions of a shared pool
+	 *
+	 * @param url host to run command on
+	 * @param command shell command line
+	 * @return exec command
+	 */
+	public static ExecCommand exec(String url, String command) {
+		return SharedSessions.INSTANCE.exec(url, command);
+	}
+
+	/**
+	 * Creates a command running same shell command on every given host over sessions of a shared
+	 * pool
+	 *
+	 * @param urls hosts to run command on
+	 * @param command shell command line
+	 * @return exec command
+	 */
+	public static ExecCommand execOnAll(Collection<String> urls, String command) {
+		return SharedSessions.INSTANCE.execOnAll(urls, command);
+	}
+
+	public static SessionsBuilder sessions() {
+		return new SessionsBuilder();
+	}
+
+	/**
+	 * Pool of open SSH sessions reused by commands created through it
+	 */
+	public interface Sessions extends AutoCloseable {
+		ScpCommand scpTo(String address);
+		ScpCommand scpToAll(Collection<String> addresses);
+		ScpFromCommand scpFrom(String address);
+		SftpCommand sftpTo(String address);
+		ExecCommand exec(String address, String command);
+		ExecCommand execOnAll(Collection<String> addresses, String command);
+
+		/**
+		 * @return number of sessions currently open
+		 */
+		int open();
+
+		/**
+		 * Disconnects all sessions
+		 */
+		@Override
+		void close();
 	}
 
+	public static class SessionsBuilder {
+
+		private String identity = System.getProperty("user.home") + "/.ssh/id_rsa";
+		private Supplier<UserInfo> userInfo = () -> new ConsoleUserInfo(Sys.console());
+		private final Properties config = new Properties();
+		private Duration keepAlive = Duration.ofSeconds(30);
+		private int maxChannels = 8;
+		private Duration idleTimeout = Duration.ofMinutes(5);
+
+		SessionsBuilder() {
+		}
+
+		/**
+		 * @param identity private key file, null to not load any
+		 * @return this builder
+		 */
+		public SessionsBuilder identity(String identity) {
+			this.identity = identity;
+			return this;
+		}
+
+		public SessionsBuilder userInfo(Supplier<UserInfo> userInfo) {
+			this.userInfo = Objects.requireNonNull(userInfo);
+			return this;
+		}
+
+		/**
+		 * Sets JSch session config option, e.g. <code>StrictHostKeyChecking</code>
+		 *
+		 * @param key option name
+		 * @param value option value
+		 * @return this builder
+		 */
+		public SessionsBuilder config(String key, String value) {
+			config.setProperty(key, value);
+			return this;
+		}
+
+		/**
+		 * @param keepAlive interval between keep-alive messages, zero disables them
+		 * @return this builder
+		 */
+		public SessionsBuilder keepAlive(Duration keepAlive) {
+			this.keepAlive = Objects.requireNonNull(keepAlive);
+			return this;
+		}
+
+		/**
+		 * Sets how many channels may be open on one session at once, should not exceed server's
+		 * <code>MaxSessions</code> which is 10 for OpenSSH
+		 *
+		 * @param maxChannels max number of channels per session
+		 * @return this builder
+		 */
+		public SessionsBuilder maxChannels(int maxChannels) {
+			if (maxChannels < 1) {
+				throw new IllegalArgumentException("Max channels must be positive");
+			}
+			this.maxChannels = maxChannels;
+			return this;
+		}
+
+		public SessionsBuilder idleTimeout(Duration idleTimeout) {
+			this.idleTimeout = Objects.requireNonNull(idleTimeout);
+			return this;
+		}
+
+		public Sessions build() {
+			return new SessionPool(identity, userInfo, (Properties) config.clone(), keepAlive,
+					maxChannels, idleTimeout);
+		}
+	}
+
+	private static final class SharedSessions {
+		static final Sessions INSTANCE = sessions().build();
+	}
 }
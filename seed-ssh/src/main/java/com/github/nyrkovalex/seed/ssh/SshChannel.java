@@ -3,9 +3,11 @@ package com.github.nyrkovalex.seed.ssh;
 import com.jcraft.jsch.Channel;
 import com.jcraft.jsch.JSchException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 
 class SshChannel implements AutoCloseable {
 
@@ -30,6 +32,47 @@ class SshChannel implements AutoCloseable {
 		sendBytes(new byte[]{ (byte) oneByte });
 	}
 
+	/**
+	 * Signals end of input and waits for remote command to exit, so that everything sent is
+	 * processed by the time this returns
+	 *
+	 * @throws IOException if channel fails
+	 */
+	void finish() throws IOException {
+		out.close();
+		while (in.read() >= 0) {
+			// Remote side may still report something before closing
+		}
+	}
+
+	/**
+	 * Signals end of input and reads everything remote command prints until it exits
+	 *
+	 * @return remote output
+	 * @throws IOException if channel fails
+	 */
+	String readToEnd() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		pipeTo(output);
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Signals end of input and copies everything remote command prints as it comes until the
+	 * command closes its output
+	 *
+	 * @param sink stream to copy output to
+	 * @throws IOException if channel or sink fails
+	 */
+	void pipeTo(OutputStream sink) throws IOException {
+		out.close();
+		byte[] buf = new byte[8192];
+		int read;
+		while ((read = in.read(buf)) >= 0) {
+			sink.write(buf, 0, read);
+		}
+	}
+
 	@Override
 	public void close() throws IOException {
 		out.close();
@@ -81,4 +124,20 @@ class SshChannel implements AutoCloseable {
 	void write(byte[] buf) throws IOException {
 		out.write(buf);
 	}
+
+	void write(byte[] buf, int offset, int length) throws IOException {
+		out.write(buf, offset, length);
+	}
+
+	void flush() throws IOException {
+		out.flush();
+	}
+
+	int read() throws IOException {
+		return in.read();
+	}
+
+	int read(byte[] buf, int offset, int length) throws IOException {
+		return in.read(buf, offset, length);
+	}
 }
@@ -0,0 +1,116 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs transfers reporting their own failures as results, on a short-lived pool of daemon threads
+ * when parallelism allows. Results come in the order of transfers.
+ */
+final class Transfers {
+
+	private static final AtomicInteger RUN_COUNT = new AtomicInteger();
+
+	private Transfers() {
+		// Module
+	}
+
+	static <T> List<T> run(List<? extends Callable<T>> transfers, int parallelism) {
+		int threads = Math.min(parallelism, transfers.size());
+		if (threads <= 1) {
+			List<T> results = new ArrayList<>(transfers.size());
+			for (Callable<T> transfer : transfers) {
+				results.add(call(transfer));
+			}
+			return Collections.unmodifiableList(results);
+		}
+		ExecutorService executor = executor(threads, "scp");
+		try {
+			List<Future<T>> futures = executor.invokeAll(transfers);
+			List<T> results = new ArrayList<>(futures.size());
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+			return Collections.unmodifiableList(results);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while transferring files", ex);
+		} catch (ExecutionException ex) {
+			throw new IllegalStateException(ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Starts tasks reporting their own failures as results without waiting for them
+	 *
+	 * @return future of all results in the order of tasks
+	 */
+	static <T> CompletableFuture<List<T>> start(List<? extends Callable<T>> tasks,
+			int parallelism, String kind) {
+		ExecutorService executor = executor(Math.max(1, Math.min(parallelism, tasks.size())), kind);
+		List<CompletableFuture<T>> futures = new ArrayList<>(tasks.size());
+		for (Callable<T> task : tasks) {
+			futures.add(CompletableFuture.supplyAsync(() -> call(task), executor));
+		}
+		CompletableFuture<List<T>> all = CompletableFuture
+				.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+				.thenApply(done -> {
+					List<T> results = new ArrayList<>(futures.size());
+					futures.forEach(f -> results.add(f.join()));
+					return Collections.unmodifiableList(results);
+				});
+		all.whenComplete((results, ex) -> executor.shutdown());
+		return all;
+	}
+
+	/**
+	 * @throws SshException first failure, other ones are attached as suppressed
+	 */
+	static void throwFailures(List<ScpResult> results) throws SshException {
+		SshException err = null;
+		for (ScpResult result : results) {
+			if (result.succeeded()) {
+				continue;
+			}
+			SshException cause = result.error().get();
+			if (err == null) {
+				err = cause;
+			} else {
+				err.addSuppressed(cause);
+			}
+		}
+		if (err != null) {
+			throw err;
+		}
+	}
+
+	private static ExecutorService executor(int threads, String kind) {
+		int runNumber = RUN_COUNT.incrementAndGet();
+		AtomicInteger threadCount = new AtomicInteger();
+		return Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r,
+					"seed-ssh-" + kind + "-" + runNumber + "-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private static <T> T call(Callable<T> transfer) {
+		try {
+			return transfer.call();
+		} catch (Exception ex) {
+			// Transfers report their failures as results
+			throw new IllegalStateException(ex);
+		}
+	}
+}
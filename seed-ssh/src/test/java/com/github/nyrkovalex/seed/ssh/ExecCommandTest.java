@@ -0,0 +1,71 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ExecCommandTest {
+
+	@Rule public SshServerRule server = new SshServerRule();
+
+	Ssh.Sessions sessions;
+
+	@Before
+	public void createPool() {
+		sessions = server.sessions().build();
+	}
+
+	@After
+	public void closePool() {
+		sessions.close();
+	}
+
+	@Test
+	public void testShouldStreamOutputLines() throws Exception {
+		List<String> out = new CopyOnWriteArrayList<>();
+		List<String> err = new CopyOnWriteArrayList<>();
+		ExecResult result = sessions.exec(server.address(), "printf 'one\\ntwo\\n'; echo oops >&2")
+				.asUser("dude")
+				.stdout((host, line) -> out.add(line))
+				.stderr((host, line) -> err.add(line))
+				.start()
+				.get()
+				.get(0);
+		assertThat(result.succeeded(), is(true));
+		assertThat(out, is(Arrays.asList("one", "two")));
+		assertThat(err, is(Collections.singletonList("oops")));
+	}
+
+	@Test
+	public void testShouldReportExitStatus() throws Exception {
+		ExecResult result = sessions.exec(server.address(), "exit 3").asUser("dude").run().get(0);
+		assertThat(result.error().isPresent(), is(false));
+		assertThat(result.exitStatus(), is(3));
+		assertThat(result.succeeded(), is(false));
+	}
+
+	@Test
+	public void testShouldRunOnAllHosts() throws Exception {
+		String port = server.address().substring("localhost".length());
+		List<String> hosts = new CopyOnWriteArrayList<>();
+		List<ExecResult> results = sessions
+				.execOnAll(Arrays.asList("localhost" + port, "127.0.0.1" + port), "echo hi")
+				.asUser("dude")
+				.parallelism(2)
+				.stdout((host, line) -> hosts.add(host))
+				.run();
+		assertThat(results.get(0).host(), is("localhost" + port));
+		assertThat(results.get(1).host(), is("127.0.0.1" + port));
+		assertThat(results.get(0).succeeded() && results.get(1).succeeded(), is(true));
+		assertThat(hosts.size(), is(2));
+	}
+}
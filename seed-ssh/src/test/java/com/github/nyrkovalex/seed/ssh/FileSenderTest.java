@@ -0,0 +1,59 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class FileSenderTest {
+
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	private Path file(int size) throws Exception {
+		byte[] content = new byte[size];
+		new Random(size).nextBytes(content);
+		Path file = tmp.newFile().toPath();
+		Files.write(file, content);
+		return file;
+	}
+
+	@Test
+	public void testShouldSendSmallFileExactly() throws Exception {
+		Path file = file(1000);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new FileSender(4096).send(file, 1000, out::write);
+		assertThat(out.toByteArray(), is(Files.readAllBytes(file)));
+	}
+
+	@Test
+	public void testShouldPipelineLargeFile() throws Exception {
+		Path file = file(100_003);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new FileSender(4096).send(file, 100_003, out::write);
+		assertThat(out.toByteArray(), is(Files.readAllBytes(file)));
+	}
+
+	@Test
+	public void testShouldStopAtAnnouncedSize() throws Exception {
+		Path file = file(10_000);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new FileSender(4096).send(file, 9000, out::write);
+		assertThat(out.toByteArray(), is(Arrays.copyOf(Files.readAllBytes(file), 9000)));
+	}
+
+	@Test(expected = EOFException.class)
+	public void testShouldFailWhenFileIsShorterThanAnnounced() throws Exception {
+		Path file = file(10_000);
+		new FileSender(4096).send(file, 20_000, (buf, off, len) -> {
+		});
+	}
+}
@@ -0,0 +1,201 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ScpCommandTest {
+
+	@Rule public SshServerRule server = new SshServerRule();
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	Ssh.Sessions sessions;
+	File target;
+
+	@Before
+	public void createPool() throws Exception {
+		sessions = server.sessions().maxChannels(2).build();
+		target = tmp.newFolder("target");
+	}
+
+	@After
+	public void closePool() {
+		sessions.close();
+	}
+
+	private File file(String name, String content) throws Exception {
+		File file = tmp.newFile(name);
+		Files.write(file.toPath(), content.getBytes("UTF-8"));
+		return file;
+	}
+
+	private String read(String name) throws Exception {
+		return new String(Files.readAllBytes(new File(target, name).toPath()), "UTF-8");
+	}
+
+	@Test
+	public void testShouldSendFilesInParallel() throws Exception {
+		ScpCommand scp = sessions.scpTo(server.address()).asUser("dude").parallelism(4);
+		for (int i = 0; i < 8; i++) {
+			scp.file(file("file" + i, "content " + i).getPath(),
+					new File(target, "copy" + i).getPath());
+		}
+		List<ScpResult> results = scp.send();
+		assertThat(results.size(), is(8));
+		for (int i = 0; i < 8; i++) {
+			assertThat(results.get(i).succeeded(), is(true));
+			assertThat(read("copy" + i), is("content " + i));
+		}
+	}
+
+	@Test
+	public void testShouldReportFailuresPerFile() throws Exception {
+		List<ScpResult> results = sessions.scpTo(server.address())
+				.asUser("dude")
+				.parallelism(2)
+				.file(new File(tmp.getRoot(), "missing").getPath(),
+						new File(target, "missing").getPath())
+				.file(file("present", "here").getPath(), new File(target, "present").getPath())
+				.send();
+		assertThat(results.get(0).succeeded(), is(false));
+		assertThat(results.get(1).succeeded(), is(true));
+		assertThat(read("present"), is("here"));
+	}
+
+	@Test
+	public void testShouldFanOutToAllHosts() throws Exception {
+		String port = server.address().substring("localhost".length());
+		List<ScpResult> results = sessions
+				.scpToAll(Arrays.asList("localhost" + port, "127.0.0.1" + port))
+				.asUser("dude")
+				.parallelism(2)
+				.file(file("payload", "payload").getPath(), new File(target, "payload").getPath())
+				.send();
+		assertThat(results.size(), is(2));
+		assertThat(results.get(0).host(), is("localhost" + port));
+		assertThat(results.get(1).host(), is("127.0.0.1" + port));
+		assertThat(results.get(0).succeeded() && results.get(1).succeeded(), is(true));
+		assertThat(sessions.open(), is(2));
+	}
+
+	@Test
+	public void testShouldSendDirectoryTree() throws Exception {
+		File root = tmp.newFolder("tree");
+		File nested = new File(root, "nested/deeper");
+		nested.mkdirs();
+		for (int i = 0; i < 50; i++) {
+			Files.write(new File(i % 2 == 0 ? root : nested, "file" + i).toPath(),
+					("content " + i).getBytes("UTF-8"));
+		}
+		new File(root, "empty").mkdir();
+		sessions.scpTo(server.address())
+				.asUser("dude")
+				.directory(root.getPath(), new File(target, "copy").getPath())
+				.run();
+		assertThat(read("copy/file0"), is("content 0"));
+		assertThat(read("copy/nested/deeper/file49"), is("content 49"));
+		assertThat(new File(target, "copy/empty").isDirectory(), is(true));
+		assertThat(new File(target, "copy/nested/deeper").list().length, is(25));
+	}
+
+	@Test
+	public void testShouldKeepModificationTime() throws Exception {
+		File source = file("dated", "old");
+		source.setLastModified(1_000_000_000_000L);
+		sessions.scpTo(server.address())
+				.asUser("dude")
+				.file(source.getPath(), new File(target, "dated").getPath())
+				.run();
+		assertThat(new File(target, "dated").lastModified(), is(1_000_000_000_000L));
+	}
+
+	@Test
+	public void testShouldSkipUnchangedFiles() throws Exception {
+		File same = file("same", "same");
+		File changed = file("changed", "before");
+		String manifest = new File(tmp.getRoot(), "manifest").getPath();
+		ScpCommand scp = sessions.scpTo(server.address())
+				.asUser("dude")
+				.incremental(manifest)
+				.file(same.getPath(), new File(target, "same").getPath())
+				.file(changed.getPath(), new File(target, "changed").getPath());
+		List<ScpResult> first = scp.send();
+		assertThat(first.get(0).skipped() || first.get(1).skipped(), is(false));
+
+		Files.write(changed.toPath(), "after".getBytes("UTF-8"));
+		List<ScpResult> second = scp.send();
+		assertThat(second.get(0).skipped(), is(true));
+		assertThat(second.get(1).skipped(), is(false));
+		assertThat(second.get(1).succeeded(), is(true));
+		assertThat(read("changed"), is("after"));
+	}
+
+	@Test
+	public void testShouldSkipUnchangedFileInsideTargetDirectory() throws Exception {
+		File source = file("inside", "inside");
+		String manifest = new File(tmp.getRoot(), "manifest").getPath();
+		ScpCommand scp = sessions.scpTo(server.address())
+				.asUser("dude")
+				.incremental(manifest)
+				.file(source.getPath(), target.getPath());
+		assertThat(scp.send().get(0).skipped(), is(false));
+		assertThat(read("inside"), is("inside"));
+		assertThat(scp.send().get(0).skipped(), is(true));
+	}
+
+	@Test
+	public void testShouldReportUnreadableManifestPerFile() throws Exception {
+		File manifest = tmp.newFolder("manifest");
+		List<ScpResult> results = sessions.scpTo(server.address())
+				.asUser("dude")
+				.incremental(manifest.getPath())
+				.file(file("unsent", "unsent").getPath(), new File(target, "unsent").getPath())
+				.send();
+		assertThat(results.get(0).succeeded(), is(false));
+		assertThat(new File(target, "unsent").exists(), is(false));
+	}
+
+	@Test
+	public void testShouldReportProgress() throws Exception {
+		byte[] content = new byte[100_000];
+		File source = tmp.newFile("big");
+		Files.write(source.toPath(), content);
+		List<ScpProgress> progress = new ArrayList<>();
+		List<ScpResult> finished = new ArrayList<>();
+		sessions.scpTo(server.address())
+				.asUser("dude")
+				.bufferSize(4096)
+				.progress(new ScpListener() {
+					@Override
+					public void progress(ScpProgress p) {
+						progress.add(p);
+					}
+
+					@Override
+					public void finished(ScpResult result) {
+						finished.add(result);
+					}
+				}, Duration.ZERO)
+				.file(source.getPath(), new File(target, "big").getPath())
+				.run();
+		ScpProgress last = progress.get(progress.size() - 1);
+		assertThat(progress.size() > 1, is(true));
+		assertThat(last.done(), is(true));
+		assertThat(last.sent(), is(100_000L));
+		assertThat(finished.size(), is(1));
+		assertThat(finished.get(0).bytes(), is(100_000L));
+		assertThat(finished.get(0).handshake().compareTo(finished.get(0).elapsed()) <= 0, is(true));
+	}
+}
@@ -0,0 +1,95 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ScpFromCommandTest {
+
+	@Rule public SshServerRule server = new SshServerRule();
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	Ssh.Sessions sessions;
+	File remote;
+	File local;
+
+	@Before
+	public void createPool() throws Exception {
+		sessions = server.sessions().build();
+		remote = tmp.newFolder("remote");
+		local = tmp.newFolder("local");
+	}
+
+	@After
+	public void closePool() {
+		sessions.close();
+	}
+
+	private File remoteFile(String name, byte[] content) throws Exception {
+		File file = new File(remote, name);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content);
+		return file;
+	}
+
+	@Test
+	public void testShouldFetchFileWithTime() throws Exception {
+		byte[] content = new byte[300_001];
+		new Random(1).nextBytes(content);
+		File source = remoteFile("dump.bin", content);
+		source.setLastModified(1_000_000_000_000L);
+		File copy = new File(local, "copy.bin");
+		sessions.scpFrom(server.address())
+				.asUser("dude")
+				.bufferSize(4096)
+				.file(source.getPath(), copy.getPath())
+				.run();
+		assertThat(Files.readAllBytes(copy.toPath()), is(content));
+		assertThat(copy.lastModified(), is(1_000_000_000_000L));
+	}
+
+	@Test
+	public void testShouldFetchIntoExistingDirectory() throws Exception {
+		File source = remoteFile("app.log", "log".getBytes("UTF-8"));
+		sessions.scpFrom(server.address())
+				.asUser("dude")
+				.file(source.getPath(), local.getPath())
+				.run();
+		assertThat(Files.readAllBytes(new File(local, "app.log").toPath()),
+				is("log".getBytes("UTF-8")));
+	}
+
+	@Test
+	public void testShouldFetchDirectoryTree() throws Exception {
+		remoteFile("logs/a.log", "a".getBytes("UTF-8"));
+		remoteFile("logs/old/b.log", "b".getBytes("UTF-8"));
+		File copy = new File(local, "logs");
+		sessions.scpFrom(server.address())
+				.asUser("dude")
+				.directory(new File(remote, "logs").getPath(), copy.getPath())
+				.run();
+		assertThat(Files.readAllBytes(new File(copy, "a.log").toPath()),
+				is("a".getBytes("UTF-8")));
+		assertThat(Files.readAllBytes(new File(copy, "old/b.log").toPath()),
+				is("b".getBytes("UTF-8")));
+	}
+
+	@Test
+	public void testShouldReportMissingRemoteFile() throws Exception {
+		List<ScpResult> results = sessions.scpFrom(server.address())
+				.asUser("dude")
+				.file(new File(remote, "missing").getPath(), new File(local, "x").getPath())
+				.fetch();
+		assertThat(results.get(0).succeeded(), is(false));
+	}
+}
@@ -0,0 +1,68 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Remote paths go through remote shell, server runs system scp to check they are quoted right
+ */
+public class ScpQuotingTest {
+
+	private static final String AWKWARD_NAME = "it's a $HOME; `false`";
+
+	@Rule public SshServerRule server = new SshServerRule().withSystemScp();
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	Ssh.Sessions sessions;
+
+	@Before
+	public void createPool() {
+		assumeTrue(new File("/usr/bin/scp").canExecute());
+		sessions = server.sessions().build();
+	}
+
+	@After
+	public void closePool() {
+		if (sessions != null) {
+			sessions.close();
+		}
+	}
+
+	@Test
+	public void testShouldQuoteUploadTarget() throws Exception {
+		File source = tmp.newFile("plain");
+		Files.write(source.toPath(), "quoted".getBytes("UTF-8"));
+		File target = new File(tmp.newFolder("target"), AWKWARD_NAME);
+		ScpResult result = sessions.scpTo(server.address())
+				.asUser("dude")
+				.file(source.getPath(), target.getPath())
+				.send()
+				.get(0);
+		assertThat(result.succeeded(), is(true));
+		assertThat(new String(Files.readAllBytes(target.toPath()), "UTF-8"), is("quoted"));
+	}
+
+	@Test
+	public void testShouldQuoteDownloadSource() throws Exception {
+		File source = new File(tmp.newFolder("remote"), AWKWARD_NAME);
+		Files.write(source.toPath(), "quoted".getBytes("UTF-8"));
+		File copy = new File(tmp.getRoot(), "copy");
+		ScpResult result = sessions.scpFrom(server.address())
+				.asUser("dude")
+				.file(source.getPath(), copy.getPath())
+				.fetch()
+				.get(0);
+		assertThat(result.succeeded(), is(true));
+		assertThat(new String(Files.readAllBytes(copy.toPath()), "UTF-8"), is("quoted"));
+	}
+}
@@ -0,0 +1,80 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Server runs system scp, which reads whatever follows a header it rejects as the next record
+ */
+public class ScpRejectionTest {
+
+	// Would leave the directory and create a file next to it if sent after rejected header
+	private static final String RECORDS_LOOKALIKE = "E\nC0644 4 evil\nboom";
+
+	@Rule public SshServerRule server = new SshServerRule().withSystemScp();
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	Ssh.Sessions sessions;
+
+	@Before
+	public void createPool() {
+		assumeTrue(new File("/usr/bin/scp").canExecute());
+		sessions = server.sessions().build();
+	}
+
+	@After
+	public void closePool() {
+		if (sessions != null) {
+			sessions.close();
+		}
+	}
+
+	private static void write(Path file, String content) throws Exception {
+		Files.createDirectories(file.getParent());
+		Files.write(file, content.getBytes("UTF-8"));
+	}
+
+	private static String read(Path file) throws Exception {
+		return new String(Files.readAllBytes(file), "UTF-8");
+	}
+
+	@Test
+	public void testShouldGoOnAfterRejectedFileAndDirectory() throws Exception {
+		Path root = tmp.newFolder("tree").toPath();
+		write(root.resolve("a"), "first");
+		write(root.resolve("clash"), RECORDS_LOOKALIKE);
+		write(root.resolve("dir-clash/inner"), RECORDS_LOOKALIKE);
+		write(root.resolve("nested/z"), "last");
+		// Sink cannot write a file over a directory nor make a directory over a file
+		Path copy = tmp.newFolder("copy").toPath();
+		Files.createDirectories(copy.resolve("tree/clash"));
+		write(copy.resolve("tree/dir-clash"), "kept");
+
+		ScpResult result = sessions.scpTo(server.address())
+				.asUser("dude")
+				.directory(root.toString(), copy.toString())
+				.send()
+				.get(0);
+
+		assertThat(result.succeeded(), is(false));
+		assertThat(result.error().get().getMessage(), containsString("clash"));
+		assertThat(read(copy.resolve("tree/a")), is("first"));
+		assertThat(read(copy.resolve("tree/nested/z")), is("last"));
+		assertThat(read(copy.resolve("tree/dir-clash")), is("kept"));
+		assertThat(Files.exists(copy.resolve("evil")), is(false));
+		assertThat(Files.exists(copy.resolve("tree/evil")), is(false));
+		assertThat(Files.exists(copy.resolve("tree/nested/evil")), is(false));
+	}
+}
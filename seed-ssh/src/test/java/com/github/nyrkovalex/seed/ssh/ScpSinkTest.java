@@ -0,0 +1,66 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import com.github.nyrkovalex.seed.test.MockedTest;
+import com.jcraft.jsch.Channel;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+public class ScpSinkTest extends MockedTest {
+
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+	@Mock private Channel channel;
+
+	/**
+	 * Plays remote side sending given bytes, then closing the channel
+	 */
+	private ScpSink sink(String remote) throws Exception {
+		when(channel.getInputStream()).thenReturn(new ByteArrayInputStream(remote.getBytes("UTF-8")));
+		when(channel.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+		return new ScpSink(new SshChannel(channel), 4);
+	}
+
+	@Test
+	public void testShouldReceiveFile() throws Exception {
+		Path target = tmp.getRoot().toPath().resolve("file");
+		sink("C0644 10 file\n0123456789\0").receive(target);
+		assertThat(new String(Files.readAllBytes(target), "UTF-8"), is("0123456789"));
+	}
+
+	@Test
+	public void testShouldTruncateFileCutShort() throws Exception {
+		Path target = tmp.getRoot().toPath().resolve("file");
+		try {
+			sink("C0644 10 file\n012345").receive(target);
+			fail("Short file must not be received");
+		} catch (EOFException ex) {
+			// Connection dropped
+		}
+		assertThat(Files.size(target), is(6L));
+		assertThat(new String(Files.readAllBytes(target), "UTF-8"), is("012345"));
+	}
+
+	@Test
+	public void testShouldDeleteFileRemoteSideFailed() throws Exception {
+		Path target = tmp.getRoot().toPath().resolve("file");
+		try {
+			sink("C0644 10 file\n0123\0\0\0\0\0\0\u0001read error\n").receive(target);
+			fail("Failed file must not be received");
+		} catch (SshException ex) {
+			assertThat(ex.getMessage().endsWith("read error"), is(true));
+		}
+		assertThat(Files.exists(target), is(false));
+	}
+}
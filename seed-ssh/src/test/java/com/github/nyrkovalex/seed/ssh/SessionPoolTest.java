@@ -0,0 +1,145 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import com.github.nyrkovalex.seed.ssh.test.LocalSshServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SessionPoolTest {
+
+	@Rule public SshServerRule server = new SshServerRule();
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	Ssh.Sessions sessions;
+
+	@Before
+	public void createPool() {
+		sessions = server.sessions()
+				.maxChannels(2)
+				.idleTimeout(Duration.ofMinutes(1))
+				.build();
+	}
+
+	@After
+	public void closePool() {
+		sessions.close();
+	}
+
+	private File file(String name, String content) throws Exception {
+		File file = tmp.newFile(name);
+		Files.write(file.toPath(), content.getBytes("UTF-8"));
+		return file;
+	}
+
+	@Test
+	public void testShouldReuseSessionAcrossCommands() throws Exception {
+		File target = tmp.newFolder("target");
+		for (int i = 0; i < 3; i++) {
+			File source = file("file" + i, "content " + i);
+			sessions.scpTo(server.address())
+					.asUser("dude")
+					.file(source.getPath(), new File(target, "copy" + i).getPath())
+					.run();
+		}
+		assertThat(sessions.open(), is(1));
+		assertThat(server.activeSessions(), is(1));
+		assertThat(new String(Files.readAllBytes(new File(target, "copy2").toPath()), "UTF-8"),
+				is("content 2"));
+	}
+
+	@Test
+	public void testShouldOpenAnotherSessionWhenChannelsRunOut() throws Exception {
+		SessionPool pool = (SessionPool) sessions;
+		try (SessionPool.Lease first = pool.lease("dude", server.address());
+				SessionPool.Lease second = pool.lease("dude", server.address());
+				SessionPool.Lease third = pool.lease("dude", server.address())) {
+			assertThat(first.session() == second.session(), is(true));
+			assertThat(first.session() == third.session(), is(false));
+		}
+		assertThat(sessions.open(), is(2));
+	}
+
+	@Test
+	public void testShouldKeySessionsByUser() throws Exception {
+		SessionPool pool = (SessionPool) sessions;
+		try (SessionPool.Lease dude = pool.lease("dude", server.address());
+				SessionPool.Lease walter = pool.lease("walter", server.address())) {
+			assertThat(dude.session() == walter.session(), is(false));
+		}
+	}
+
+	@Test
+	public void testShouldEvictIdleSessions() throws Exception {
+		sessions.close();
+		sessions = server.sessions().idleTimeout(Duration.ZERO).build();
+		SessionPool pool = (SessionPool) sessions;
+		pool.lease("dude", server.address()).close();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (sessions.open() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertThat(sessions.open(), is(0));
+	}
+
+	@Test
+	public void testShouldNotHoldUpHostWhileConnecting() throws Exception {
+		sessions.close();
+		CountDownLatch handshaking = new CountDownLatch(1);
+		CountDownLatch proceed = new CountDownLatch(1);
+		AtomicInteger connects = new AtomicInteger();
+		sessions = server.sessions()
+				.maxChannels(1)
+				.userInfo(() -> connects.incrementAndGet() == 1
+						? new LocalSshServer.PasswordUserInfo()
+						: new LocalSshServer.PasswordUserInfo() {
+							@Override
+							public String getPassword() {
+								handshaking.countDown();
+								try {
+									proceed.await();
+								} catch (InterruptedException ex) {
+									Thread.currentThread().interrupt();
+								}
+								return super.getPassword();
+							}
+						})
+				.build();
+		SessionPool pool = (SessionPool) sessions;
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			SessionPool.Lease first = pool.lease("dude", server.address());
+			Future<SessionPool.Lease> slow = executor.submit(() ->
+					pool.lease("dude", server.address()));
+			handshaking.await();
+			// Release and lease of the connected session go on while the other one connects
+			executor.submit(() -> {
+				first.close();
+				pool.lease("dude", server.address()).close();
+				return null;
+			}).get(5, TimeUnit.SECONDS);
+			proceed.countDown();
+			try (SessionPool.Lease second = slow.get(5, TimeUnit.SECONDS)) {
+				assertThat(second.session() == first.session(), is(false));
+			}
+			assertThat(sessions.open(), is(2));
+		} finally {
+			proceed.countDown();
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SftpCommandTest {
+
+	@Rule public SshServerRule server = new SshServerRule();
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	Ssh.Sessions sessions;
+	File target;
+	byte[] content;
+	File source;
+
+	@Before
+	public void setUp() throws Exception {
+		sessions = server.sessions().build();
+		target = tmp.newFolder("target");
+		content = new byte[1_000_003];
+		new Random(42).nextBytes(content);
+		source = tmp.newFile("big");
+		Files.write(source.toPath(), content);
+	}
+
+	@After
+	public void closePool() {
+		sessions.close();
+	}
+
+	private File part(long modified, long offset) {
+		return new File(target, "big." + content.length + "-" + modified + "." + offset + ".part");
+	}
+
+	private File part(long offset) {
+		return part(source.lastModified(), offset);
+	}
+
+	@Test
+	public void testShouldSendRangesInParallel() throws Exception {
+		File copy = new File(target, "big");
+		ScpResult result = sessions.sftpTo(server.address())
+				.asUser("dude")
+				.rangeSize(100_000)
+				.parallelism(4)
+				.file(source.getPath(), copy.getPath())
+				.send()
+				.get(0);
+		assertThat(result.succeeded(), is(true));
+		assertThat(result.bytes(), is(1_000_003L));
+		assertThat(Files.readAllBytes(copy.toPath()), is(content));
+		assertThat(target.list().length, is(1));
+	}
+
+	@Test
+	public void testShouldResumeFromRemotePartSize() throws Exception {
+		File copy = new File(target, "big");
+		Files.write(part(0).toPath(), Arrays.copyOf(content, 60_000));
+		Files.write(part(100_000).toPath(),
+				Arrays.copyOfRange(content, 100_000, 200_000));
+		ScpResult result = sessions.sftpTo(server.address())
+				.asUser("dude")
+				.rangeSize(100_000)
+				.file(source.getPath(), copy.getPath())
+				.send()
+				.get(0);
+		assertThat(result.succeeded(), is(true));
+		assertThat(result.bytes(), is(1_000_003L - 160_000));
+		assertThat(Files.readAllBytes(copy.toPath()), is(content));
+	}
+
+	@Test
+	public void testShouldRejectCorruptParts() throws Exception {
+		File copy = new File(target, "big");
+		Files.write(part(0).toPath(), new byte[100_000]);
+		ScpResult result = sessions.sftpTo(server.address())
+				.asUser("dude")
+				.rangeSize(100_000)
+				.file(source.getPath(), copy.getPath())
+				.send()
+				.get(0);
+		assertThat(result.succeeded(), is(false));
+		assertThat(copy.exists(), is(false));
+		assertThat(target.list().length, is(0));
+	}
+
+	@Test
+	public void testShouldDiscardPartsOfOtherVersion() throws Exception {
+		File copy = new File(target, "big");
+		// Same size, written a second earlier: a rerun after the local file changed
+		Files.write(part(source.lastModified() - 1000, 0).toPath(), new byte[60_000]);
+		Files.write(new File(target, "big.100000.part").toPath(), new byte[100_000]);
+		File unrelated = new File(target, "big.notes.part");
+		Files.write(unrelated.toPath(), new byte[1]);
+		ScpResult result = sessions.sftpTo(server.address())
+				.asUser("dude")
+				.rangeSize(100_000)
+				.file(source.getPath(), copy.getPath())
+				.send()
+				.get(0);
+		assertThat(result.succeeded(), is(true));
+		assertThat(result.bytes(), is(1_000_003L));
+		assertThat(Files.readAllBytes(copy.toPath()), is(content));
+		assertThat(target.list().length, is(2));
+		assertThat(unrelated.exists(), is(true));
+	}
+}
@@ -0,0 +1,68 @@
+package com.github.nyrkovalex.seed.ssh;
+
+import com.github.nyrkovalex.seed.ssh.test.LocalSshServer;
+import org.apache.sshd.scp.server.ScpCommandFactory;
+import org.apache.sshd.server.command.CommandFactory;
+import org.apache.sshd.server.shell.ProcessShellFactory;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.junit.rules.ExternalResource;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * In-process SSH server bound to localhost accepting any password, runs scp, sftp and shell
+ * commands against local files
+ */
+class SshServerRule extends ExternalResource {
+
+	private final TemporaryFolder keys = new TemporaryFolder();
+	private LocalSshServer server;
+	private boolean systemScp;
+
+	/**
+	 * Makes server run <code>scp</code> commands through shell like OpenSSH does, with scp of
+	 * the system, instead of handling them itself
+	 *
+	 * @return this rule
+	 */
+	SshServerRule withSystemScp() {
+		this.systemScp = true;
+		return this;
+	}
+
+	@Override
+	protected void before() throws Throwable {
+		keys.create();
+		CommandFactory shell = (channel, command) ->
+				new ProcessShellFactory(command, "/bin/sh", "-c", command).createShell(channel);
+		server = new LocalSshServer(keys.getRoot().toPath(),
+				systemScp ? shell : new ScpCommandFactory.Builder().withDelegate(shell).build(),
+				new SftpSubsystemFactory.Builder().build());
+	}
+
+	@Override
+	protected void after() {
+		try {
+			server.close();
+		} catch (Exception ex) {
+			throw new IllegalStateException(ex);
+		} finally {
+			keys.delete();
+		}
+	}
+
+	String address() {
+		return server.address();
+	}
+
+	int activeSessions() {
+		return server.activeSessions();
+	}
+
+	Ssh.SessionsBuilder sessions() {
+		return Ssh.sessions()
+				.identity(null)
+				.userInfo(LocalSshServer.PasswordUserInfo::new)
+				.config("StrictHostKeyChecking", "no")
+				.config("PreferredAuthentications", "password");
+	}
+}